@@ -0,0 +1,363 @@
+package com.example.markdowneditor;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Консольная конвертация дерева каталогов с Markdown-файлами в HTML через {@link HtmlRenderer}.
+ * Запускается на обычной JVM (см. задачу convertMarkdownToHtml в app/build.gradle).
+ * <p>
+ * Файлы обрабатываются параллельно на всех ядрах. В выходном каталоге хранится манифест
+ * с хешами исходников; файл, хеш которого не изменился и HTML для которого уже есть, пропускается.
+ * HTML удалённых исходников удаляется вместе с их строками манифеста.
+ * <p>
+ * Исходники, которые пишут в один HTML (a.md и a.markdown), не конвертируются вперемешку:
+ * берётся первый по алфавиту путь, остальные пропускаются с сообщением.
+ * <p>
+ * Использование: BatchHtmlConverter &lt;входной каталог&gt; &lt;выходной каталог&gt; [число потоков]
+ */
+public final class BatchHtmlConverter {
+    static final String MANIFEST_FILE_NAME = ".markdown-html-manifest";
+    /**
+     * Входит в хеш, чтобы после изменения формата HTML все файлы сконвертировались заново
+     */
+    static final String RENDERER_VERSION = "1";
+
+    private final File inputDirectory;
+    private final File outputDirectory;
+    private final int threadCount;
+
+    BatchHtmlConverter(File inputDirectory, File outputDirectory, int threadCount) {
+        this.inputDirectory = inputDirectory;
+        this.outputDirectory = outputDirectory;
+        this.threadCount = threadCount;
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("Использование: BatchHtmlConverter <входной каталог> <выходной каталог> [число потоков]");
+            System.exit(2);
+        }
+        int threadCount = args.length > 2
+                ? Integer.parseInt(args[2])
+                : Runtime.getRuntime().availableProcessors();
+        Result result = new BatchHtmlConverter(new File(args[0]), new File(args[1]), threadCount).run();
+        System.out.println(result);
+        if (result.failedCount > 0) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Итог конвертации
+     */
+    static final class Result {
+        final int convertedCount;
+        final int skippedCount;
+        final int failedCount;
+        final int collidingCount;
+        final int removedCount;
+        final long elapsedMillis;
+
+        Result(int convertedCount, int skippedCount, int failedCount, int collidingCount, int removedCount,
+               long elapsedMillis) {
+            this.convertedCount = convertedCount;
+            this.skippedCount = skippedCount;
+            this.failedCount = failedCount;
+            this.collidingCount = collidingCount;
+            this.removedCount = removedCount;
+            this.elapsedMillis = elapsedMillis;
+        }
+
+        @Override
+        public String toString() {
+            int totalCount = convertedCount + skippedCount + failedCount;
+            return String.format("Сконвертировано: %d, без изменений: %d, ошибок: %d, совпадений имён: %d, удалено: %d,"
+                            + " %d мс (%.0f файлов/с)",
+                    convertedCount, skippedCount, failedCount, collidingCount, removedCount, elapsedMillis,
+                    totalCount * 1000.0 / Math.max(1, elapsedMillis));
+        }
+    }
+
+    Result run() throws IOException, InterruptedException {
+        long startNanos = System.nanoTime();
+        if (!inputDirectory.isDirectory()) {
+            throw new IOException("Нет каталога " + inputDirectory);
+        }
+        List<String> sourcePaths = new ArrayList<>();
+        boolean hasUnlistedDirectories = !collectMarkdownFiles(inputDirectory, "", sourcePaths);
+        Collections.sort(sourcePaths);
+        Map<String, String> sourcesByHtmlPath = chooseSourcePerHtmlPath(sourcePaths);
+        List<String> relativePaths = new ArrayList<>(sourcesByHtmlPath.values());
+
+        File manifestFile = new File(outputDirectory, MANIFEST_FILE_NAME);
+        Map<String, String> previousHashes = readManifest(manifestFile);
+        for (String sourcePath : sourcePaths) {
+            String chosenPath = sourcesByHtmlPath.get(toHtmlPath(sourcePath));
+            // HTML мог остаться от пропущенного исходника, поэтому выбранный конвертируется заново
+            if (!chosenPath.equals(sourcePath) && previousHashes.containsKey(sourcePath)) {
+                previousHashes.remove(chosenPath);
+            }
+        }
+        Map<String, String> currentHashes = new ConcurrentHashMap<>();
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, threadCount));
+        List<Future<Boolean>> conversions = new ArrayList<>(relativePaths.size());
+        try {
+            for (String relativePath : relativePaths) {
+                conversions.add(executor.submit(
+                        () -> convertIfChanged(relativePath, previousHashes.get(relativePath), currentHashes)));
+            }
+
+            int convertedCount = 0;
+            int skippedCount = 0;
+            int failedCount = 0;
+            for (int fileIndex = 0; fileIndex < conversions.size(); fileIndex++) {
+                try {
+                    if (conversions.get(fileIndex).get()) {
+                        convertedCount++;
+                    } else {
+                        skippedCount++;
+                    }
+                } catch (ExecutionException exception) {
+                    failedCount++;
+                    System.err.println(relativePaths.get(fileIndex) + ": " + exception.getCause());
+                }
+            }
+
+            int removedCount = removeDeletedSources(sourcePaths, previousHashes, currentHashes,
+                    hasUnlistedDirectories);
+            writeManifest(manifestFile, currentHashes);
+            return new Result(convertedCount, skippedCount, failedCount,
+                    sourcePaths.size() - relativePaths.size(), removedCount,
+                    (System.nanoTime() - startNanos) / 1_000_000);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Возвращает false, если файл не менялся с прошлого запуска и конвертация пропущена
+     */
+    private boolean convertIfChanged(String relativePath, String previousHash,
+                                     Map<String, String> currentHashes) throws IOException {
+        byte[] sourceBytes = readBytes(new File(inputDirectory, relativePath));
+        String sourceHash = hash(sourceBytes);
+        File outputFile = new File(outputDirectory, toHtmlPath(relativePath));
+        if (sourceHash.equals(previousHash) && outputFile.isFile()) {
+            currentHashes.put(relativePath, sourceHash);
+            return false;
+        }
+
+        // Так же, как при открытии локального файла в приложении (MappedMarkdownFile)
+        String content = new String(sourceBytes, StandardCharsets.UTF_8).replace("\r\n", "\n");
+        List<MarkdownBlock> blocks = MarkdownBlockParser.parse(content);
+
+        File parentDirectory = outputFile.getParentFile();
+        if (parentDirectory != null && !parentDirectory.isDirectory() && !parentDirectory.mkdirs()
+                && !parentDirectory.isDirectory()) {
+            throw new IOException("Не удалось создать каталог " + parentDirectory);
+        }
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(outputFile), StandardCharsets.UTF_8), 64 * 1024)) {
+            new HtmlRenderer(null, true).renderPage(blocks, new File(relativePath).getName(), writer);
+        }
+        // Хеш записывается только после успешной записи, чтобы упавший файл повторился в следующий раз
+        currentHashes.put(relativePath, sourceHash);
+        return true;
+    }
+
+    /**
+     * Удаляет HTML исходников, которые были в манифесте, но пропали из входного каталога.
+     * Если какой-то каталог не удалось прочитать, ничего не удаляется, а старые строки манифеста
+     * сохраняются, чтобы временная ошибка чтения не стёрла уже сконвертированные страницы.
+     */
+    private int removeDeletedSources(List<String> relativePaths, Map<String, String> previousHashes,
+                                     Map<String, String> currentHashes, boolean hasUnlistedDirectories) {
+        Set<String> existingPaths = new HashSet<>(relativePaths);
+        Set<String> existingHtmlPaths = new HashSet<>();
+        for (String relativePath : relativePaths) {
+            existingHtmlPaths.add(toHtmlPath(relativePath));
+        }
+        int removedCount = 0;
+        for (Map.Entry<String, String> entry : previousHashes.entrySet()) {
+            String relativePath = entry.getKey();
+            if (existingPaths.contains(relativePath)) {
+                continue;
+            }
+            if (hasUnlistedDirectories) {
+                currentHashes.put(relativePath, entry.getValue());
+                continue;
+            }
+            File outputFile = new File(outputDirectory, toHtmlPath(relativePath));
+            // a.md и a.markdown пишут в один a.html, и оставшийся исходник свой HTML не теряет
+            if (!existingHtmlPaths.contains(toHtmlPath(relativePath))
+                    && outputFile.isFile() && !outputFile.delete()) {
+                // Строка остаётся в манифесте, чтобы удаление повторилось в следующий раз
+                System.err.println("Не удалось удалить " + outputFile);
+                currentHashes.put(relativePath, entry.getValue());
+                continue;
+            }
+            removeEmptyDirectories(outputFile.getParentFile());
+            removedCount++;
+        }
+        return removedCount;
+    }
+
+    private void removeEmptyDirectories(File directory) {
+        File outputRoot = outputDirectory.getAbsoluteFile();
+        File currentDirectory = directory != null ? directory.getAbsoluteFile() : null;
+        while (currentDirectory != null && !currentDirectory.equals(outputRoot)) {
+            String[] children = currentDirectory.list();
+            if (children == null || children.length > 0 || !currentDirectory.delete()) {
+                return;
+            }
+            currentDirectory = currentDirectory.getParentFile();
+        }
+    }
+
+    /**
+     * Возвращает false, если содержимое какого-то каталога не удалось прочитать
+     */
+    private static boolean collectMarkdownFiles(File directory, String relativePrefix, List<String> relativePaths) {
+        File[] children = directory.listFiles();
+        if (children == null) {
+            System.err.println("Не удалось прочитать каталог " + directory);
+            return false;
+        }
+        boolean isComplete = true;
+        for (File child : children) {
+            String relativePath = relativePrefix + child.getName();
+            if (child.isDirectory()) {
+                if (!child.getName().startsWith(".")) {
+                    isComplete &= collectMarkdownFiles(child, relativePath + "/", relativePaths);
+                }
+            } else if (child.getName().toLowerCase(Locale.ROOT).matches(".*\\.(md|markdown)$")) {
+                relativePaths.add(relativePath);
+            }
+        }
+        return isComplete;
+    }
+
+    /**
+     * Выбирает по одному исходнику на каждый HTML: из отсортированных путей берётся первый,
+     * так что результат не зависит от порядка файлов в каталоге и от потоков конвертации
+     */
+    private static Map<String, String> chooseSourcePerHtmlPath(List<String> sortedPaths) {
+        Map<String, String> sourcesByHtmlPath = new LinkedHashMap<>();
+        for (String relativePath : sortedPaths) {
+            String htmlPath = toHtmlPath(relativePath);
+            String chosenPath = sourcesByHtmlPath.putIfAbsent(htmlPath, relativePath);
+            if (chosenPath != null) {
+                System.err.println(relativePath + ": пропущен, " + htmlPath + " строится из " + chosenPath);
+            }
+        }
+        return sourcesByHtmlPath;
+    }
+
+    static String toHtmlPath(String markdownPath) {
+        return markdownPath.substring(0, markdownPath.lastIndexOf('.')) + ".html";
+    }
+
+    private String hash(byte[] sourceBytes) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException exception) {
+            throw new IllegalStateException(exception);
+        }
+        digest.update(RENDERER_VERSION.getBytes(StandardCharsets.UTF_8));
+        byte[] hashBytes = digest.digest(sourceBytes);
+        StringBuilder hexHash = new StringBuilder(hashBytes.length * 2);
+        for (byte hashByte : hashBytes) {
+            hexHash.append(Character.forDigit((hashByte >> 4) & 0xf, 16));
+            hexHash.append(Character.forDigit(hashByte & 0xf, 16));
+        }
+        return hexHash.toString();
+    }
+
+    private static byte[] readBytes(File file) throws IOException {
+        try (InputStream inputStream = new FileInputStream(file)) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream((int) Math.max(32, file.length()));
+            byte[] buffer = new byte[64 * 1024];
+            int readCount;
+            while ((readCount = inputStream.read(buffer)) != -1) {
+                bytes.write(buffer, 0, readCount);
+            }
+            return bytes.toByteArray();
+        }
+    }
+
+    /**
+     * Строки манифеста: хеш, табуляция, относительный путь исходника
+     */
+    private static Map<String, String> readManifest(File manifestFile) throws IOException {
+        Map<String, String> hashes = new ConcurrentHashMap<>();
+        if (!manifestFile.isFile()) {
+            return hashes;
+        }
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new FileInputStream(manifestFile), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int separator = line.indexOf('\t');
+                if (separator > 0) {
+                    hashes.put(line.substring(separator + 1), line.substring(0, separator));
+                }
+            }
+        }
+        return hashes;
+    }
+
+    /**
+     * Пишет манифест во временный файл и переименовывает его, чтобы прерванный запуск
+     * не оставил частично записанный манифест
+     */
+    private static void writeManifest(File manifestFile, Map<String, String> hashes) throws IOException {
+        File parentDirectory = manifestFile.getParentFile();
+        if (parentDirectory != null && !parentDirectory.isDirectory() && !parentDirectory.mkdirs()) {
+            throw new IOException("Не удалось создать каталог " + parentDirectory);
+        }
+        File temporaryFile = new File(manifestFile.getPath() + ".tmp");
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(temporaryFile), StandardCharsets.UTF_8))) {
+            for (Map.Entry<String, String> entry : new TreeMap<>(hashes).entrySet()) {
+                writer.write(entry.getValue());
+                writer.write('\t');
+                writer.write(entry.getKey());
+                writer.write('\n');
+            }
+        }
+        if (!temporaryFile.renameTo(manifestFile)) {
+            if (!manifestFile.delete() || !temporaryFile.renameTo(manifestFile)) {
+                throw new IOException("Не удалось записать манифест " + manifestFile);
+            }
+        }
+    }
+}
@@ -0,0 +1,224 @@
+package com.example.markdowneditor;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Оглавление документа: дерево заголовков с позициями в исходном тексте и разбиение блоков на секции.
+ * Секция начинается с заголовка и продолжается до следующего заголовка; блоки до первого
+ * заголовка образуют отдельную начальную секцию.
+ */
+public class DocumentOutline {
+
+    /**
+     * Заголовок документа и его место в дереве оглавления
+     */
+    public static final class Heading {
+        public final int level;
+        public final String title;
+        public final int blockIndex;
+        public final int sourceLineIndex;
+        public final int sectionIndex;
+        private final Heading parent;
+        private final List<Heading> children = new ArrayList<>();
+
+        Heading(int level, String title, int blockIndex, int sourceLineIndex, int sectionIndex, Heading parent) {
+            this.level = level;
+            this.title = title;
+            this.blockIndex = blockIndex;
+            this.sourceLineIndex = sourceLineIndex;
+            this.sectionIndex = sectionIndex;
+            this.parent = parent;
+        }
+
+        public Heading getParent() {
+            return parent;
+        }
+
+        public List<Heading> getChildren() {
+            return Collections.unmodifiableList(children);
+        }
+
+        /**
+         * Глубина в дереве оглавления, начиная с 0 для заголовков верхнего уровня
+         */
+        public int getDepth() {
+            int depth = 0;
+            for (Heading ancestor = parent; ancestor != null; ancestor = ancestor.parent) {
+                depth++;
+            }
+            return depth;
+        }
+    }
+
+    private final List<Heading> headings;
+    private final List<Heading> rootHeadings;
+    private final int[] sectionStartBlocks;
+    private final int[] sectionStartLines;
+    private final int blockCount;
+
+    public DocumentOutline(List<MarkdownBlock> blocks) {
+        this(collectHeadingBlocks(blocks), collectHeadingBlockIndices(blocks), blocks.size());
+    }
+
+    /**
+     * Строит оглавление только по блокам-заголовкам, не держа в памяти остальные блоки документа
+     *
+     * @param headingBlocks       заголовки в порядке следования
+     * @param headingBlockIndices индексы этих заголовков среди всех блоков документа
+     * @param blockCount          общее число блоков документа
+     */
+    public DocumentOutline(List<MarkdownBlock> headingBlocks, int[] headingBlockIndices, int blockCount) {
+        List<Heading> collectedHeadings = new ArrayList<>();
+        List<Heading> collectedRoots = new ArrayList<>();
+        List<Heading> openHeadings = new ArrayList<>();
+
+        boolean hasPreamble = blockCount > 0
+                && (headingBlockIndices.length == 0 || headingBlockIndices[0] > 0);
+        int sectionCount = Math.max(1, headingBlocks.size() + (hasPreamble ? 1 : 0));
+
+        sectionStartBlocks = new int[sectionCount];
+        sectionStartLines = new int[sectionCount];
+        int sectionIndex = hasPreamble ? 0 : -1;
+        for (int headingIndex = 0; headingIndex < headingBlocks.size(); headingIndex++) {
+            MarkdownBlock block = headingBlocks.get(headingIndex);
+            int blockIndex = headingBlockIndices[headingIndex];
+
+            sectionIndex++;
+            sectionStartBlocks[sectionIndex] = blockIndex;
+            sectionStartLines[sectionIndex] = block.getSourceLineIndex();
+
+            while (!openHeadings.isEmpty()
+                    && openHeadings.get(openHeadings.size() - 1).level >= block.getHeadingLevel()) {
+                openHeadings.remove(openHeadings.size() - 1);
+            }
+            Heading parent = openHeadings.isEmpty() ? null : openHeadings.get(openHeadings.size() - 1);
+            Heading heading = new Heading(block.getHeadingLevel(), block.getPlainText(), blockIndex,
+                    block.getSourceLineIndex(), sectionIndex, parent);
+            if (parent == null) {
+                collectedRoots.add(heading);
+            } else {
+                parent.children.add(heading);
+            }
+            collectedHeadings.add(heading);
+            openHeadings.add(heading);
+        }
+
+        this.headings = Collections.unmodifiableList(collectedHeadings);
+        this.rootHeadings = Collections.unmodifiableList(collectedRoots);
+        this.blockCount = blockCount;
+    }
+
+    private static List<MarkdownBlock> collectHeadingBlocks(List<MarkdownBlock> blocks) {
+        List<MarkdownBlock> headingBlocks = new ArrayList<>();
+        for (MarkdownBlock block : blocks) {
+            if (block.getType() == MarkdownBlock.Type.HEADING) {
+                headingBlocks.add(block);
+            }
+        }
+        return headingBlocks;
+    }
+
+    private static int[] collectHeadingBlockIndices(List<MarkdownBlock> blocks) {
+        int headingCount = 0;
+        for (MarkdownBlock block : blocks) {
+            if (block.getType() == MarkdownBlock.Type.HEADING) {
+                headingCount++;
+            }
+        }
+        int[] headingBlockIndices = new int[headingCount];
+        int headingIndex = 0;
+        for (int blockIndex = 0; blockIndex < blocks.size(); blockIndex++) {
+            if (blocks.get(blockIndex).getType() == MarkdownBlock.Type.HEADING) {
+                headingBlockIndices[headingIndex++] = blockIndex;
+            }
+        }
+        return headingBlockIndices;
+    }
+
+    /**
+     * Все заголовки в порядке следования в документе
+     */
+    public List<Heading> getHeadings() {
+        return headings;
+    }
+
+    public List<Heading> getRootHeadings() {
+        return rootHeadings;
+    }
+
+    public int getSectionCount() {
+        return sectionStartBlocks.length;
+    }
+
+    public int getSectionStartBlock(int sectionIndex) {
+        return sectionStartBlocks[sectionIndex];
+    }
+
+    /**
+     * Индекс блока, следующего за последним блоком секции
+     */
+    public int getSectionEndBlock(int sectionIndex) {
+        return sectionIndex + 1 < sectionStartBlocks.length
+                ? sectionStartBlocks[sectionIndex + 1]
+                : blockCount;
+    }
+
+    public int findSectionForBlock(int blockIndex) {
+        return findLastNotGreater(sectionStartBlocks, blockIndex);
+    }
+
+    /**
+     * Секция, содержащая строку исходного текста. Номер строки, в отличие от смещения, одинаков
+     * для текста в памяти и для файла, отображённого в память (см. {@link MappedMarkdownFile#parseWindow})
+     */
+    public int findSectionForSourceLine(int sourceLineIndex) {
+        return findLastNotGreater(sectionStartLines, sourceLineIndex);
+    }
+
+    /**
+     * Заголовок, на который указывает якорь ссылки («#установка-и-запуск»), или null
+     */
+    public Heading findHeadingByAnchor(String anchor) {
+        String normalizedAnchor = toAnchor(anchor.startsWith("#") ? anchor.substring(1) : anchor);
+        for (Heading heading : headings) {
+            if (toAnchor(heading.title).equals(normalizedAnchor)) {
+                return heading;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Якорь в том виде, в котором его строят GitHub и большинство генераторов документации
+     */
+    static String toAnchor(String title) {
+        StringBuilder anchor = new StringBuilder(title.length());
+        String lowerCaseTitle = title.trim().toLowerCase(Locale.ROOT);
+        for (int charIndex = 0; charIndex < lowerCaseTitle.length(); charIndex++) {
+            char titleChar = lowerCaseTitle.charAt(charIndex);
+            if (Character.isLetterOrDigit(titleChar) || titleChar == '-' || titleChar == '_') {
+                anchor.append(titleChar);
+            } else if (titleChar == ' ') {
+                anchor.append('-');
+            }
+        }
+        return anchor.toString();
+    }
+
+    private static int findLastNotGreater(int[] sortedValues, int value) {
+        int low = 0;
+        int high = sortedValues.length - 1;
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (sortedValues[middle] <= value) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return low;
+    }
+}
@@ -0,0 +1,192 @@
+package com.example.markdowneditor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Полнотекстовый индекс документа, строящийся при разборе.
+ * Хранит словарь слов в отсортированном виде и для каждого слова список блоков, где оно встречается,
+ * поэтому поиск по мере ввода проверяет только блоки-кандидаты, а не весь текст.
+ * Блоки изображений не индексируются.
+ */
+public class DocumentSearchIndex {
+    private final String[] foldedBlockTexts;
+    private final String[] sortedTokens;
+    private final int[][] tokenBlockPostings;
+
+    /**
+     * Совпадение поискового запроса внутри текста блока (см. {@link MarkdownBlock#getPlainText()})
+     */
+    public static final class Match {
+        public final int blockIndex;
+        public final int start;
+        public final int end;
+
+        Match(int blockIndex, int start, int end) {
+            this.blockIndex = blockIndex;
+            this.start = start;
+            this.end = end;
+        }
+    }
+
+    public DocumentSearchIndex(List<MarkdownBlock> blocks) {
+        foldedBlockTexts = new String[blocks.size()];
+        Map<String, BlockIdList> postingsByToken = new HashMap<>();
+
+        for (int blockIndex = 0; blockIndex < blocks.size(); blockIndex++) {
+            MarkdownBlock block = blocks.get(blockIndex);
+            // Подпись изображения не видна в просмотрщике, и подсветить совпадение в ней нечем
+            String foldedText = block.getType() == MarkdownBlock.Type.IMAGE
+                    ? ""
+                    : foldCase(block.getPlainText());
+            foldedBlockTexts[blockIndex] = foldedText;
+
+            int tokenStart = -1;
+            for (int position = 0; position <= foldedText.length(); position++) {
+                boolean isTokenChar = position < foldedText.length()
+                        && Character.isLetterOrDigit(foldedText.charAt(position));
+                if (isTokenChar && tokenStart == -1) {
+                    tokenStart = position;
+                } else if (!isTokenChar && tokenStart != -1) {
+                    String token = foldedText.substring(tokenStart, position);
+                    BlockIdList postings = postingsByToken.get(token);
+                    if (postings == null) {
+                        postings = new BlockIdList();
+                        postingsByToken.put(token, postings);
+                    }
+                    postings.addIfLast(blockIndex);
+                    tokenStart = -1;
+                }
+            }
+        }
+
+        sortedTokens = postingsByToken.keySet().toArray(new String[0]);
+        Arrays.sort(sortedTokens);
+        tokenBlockPostings = new int[sortedTokens.length][];
+        for (int tokenIndex = 0; tokenIndex < sortedTokens.length; tokenIndex++) {
+            tokenBlockPostings[tokenIndex] = postingsByToken.get(sortedTokens[tokenIndex]).toArray();
+        }
+    }
+
+    public int getBlockCount() {
+        return foldedBlockTexts.length;
+    }
+
+    /**
+     * Ищет вхождения запроса, начинающиеся с начала слова, без учёта регистра.
+     * Результат упорядочен по блокам и по позиции внутри блока.
+     */
+    public List<Match> search(String query) {
+        List<Match> foundMatches = new ArrayList<>();
+        String foldedQuery = foldCase(query.trim());
+        if (foldedQuery.isEmpty()) {
+            return foundMatches;
+        }
+
+        int leadingTokenEnd = 0;
+        while (leadingTokenEnd < foldedQuery.length()
+                && Character.isLetterOrDigit(foldedQuery.charAt(leadingTokenEnd))) {
+            leadingTokenEnd++;
+        }
+
+        if (leadingTokenEnd == 0) {
+            for (int blockIndex = 0; blockIndex < foldedBlockTexts.length; blockIndex++) {
+                collectMatchesInBlock(blockIndex, foldedQuery, false, foundMatches);
+            }
+            return foundMatches;
+        }
+
+        String leadingToken = foldedQuery.substring(0, leadingTokenEnd);
+        boolean isLeadingTokenComplete = leadingTokenEnd < foldedQuery.length();
+        for (int blockIndex : findCandidateBlocks(leadingToken, isLeadingTokenComplete)) {
+            collectMatchesInBlock(blockIndex, foldedQuery, true, foundMatches);
+        }
+        return foundMatches;
+    }
+
+    private int[] findCandidateBlocks(String leadingToken, boolean isLeadingTokenComplete) {
+        int firstTokenIndex = Arrays.binarySearch(sortedTokens, leadingToken);
+        if (isLeadingTokenComplete) {
+            return firstTokenIndex >= 0 ? tokenBlockPostings[firstTokenIndex] : new int[0];
+        }
+
+        if (firstTokenIndex < 0) {
+            firstTokenIndex = -firstTokenIndex - 1;
+        }
+        int lastTokenIndex = firstTokenIndex;
+        while (lastTokenIndex < sortedTokens.length && sortedTokens[lastTokenIndex].startsWith(leadingToken)) {
+            lastTokenIndex++;
+        }
+        if (lastTokenIndex - firstTokenIndex == 1) {
+            return tokenBlockPostings[firstTokenIndex];
+        }
+
+        boolean[] isCandidateBlock = new boolean[foldedBlockTexts.length];
+        int candidateCount = 0;
+        for (int tokenIndex = firstTokenIndex; tokenIndex < lastTokenIndex; tokenIndex++) {
+            for (int blockIndex : tokenBlockPostings[tokenIndex]) {
+                if (!isCandidateBlock[blockIndex]) {
+                    isCandidateBlock[blockIndex] = true;
+                    candidateCount++;
+                }
+            }
+        }
+
+        int[] candidateBlocks = new int[candidateCount];
+        int writeIndex = 0;
+        for (int blockIndex = 0; blockIndex < isCandidateBlock.length; blockIndex++) {
+            if (isCandidateBlock[blockIndex]) {
+                candidateBlocks[writeIndex++] = blockIndex;
+            }
+        }
+        return candidateBlocks;
+    }
+
+    private void collectMatchesInBlock(int blockIndex, String foldedQuery,
+                                       boolean requireWordStart, List<Match> foundMatches) {
+        String foldedText = foldedBlockTexts[blockIndex];
+        int matchStart = foldedText.indexOf(foldedQuery);
+        while (matchStart != -1) {
+            boolean isWordStart = matchStart == 0
+                    || !Character.isLetterOrDigit(foldedText.charAt(matchStart - 1));
+            if (!requireWordStart || isWordStart) {
+                foundMatches.add(new Match(blockIndex, matchStart, matchStart + foldedQuery.length()));
+            }
+            matchStart = foldedText.indexOf(foldedQuery, matchStart + 1);
+        }
+    }
+
+    /**
+     * Посимвольное приведение к нижнему регистру, сохраняющее длину строки,
+     * чтобы позиции совпадений совпадали с позициями в отображаемом тексте
+     */
+    static String foldCase(String text) {
+        char[] foldedChars = new char[text.length()];
+        for (int position = 0; position < foldedChars.length; position++) {
+            foldedChars[position] = Character.toLowerCase(text.charAt(position));
+        }
+        return new String(foldedChars);
+    }
+
+    private static final class BlockIdList {
+        private int[] blockIds = new int[4];
+        private int size;
+
+        void addIfLast(int blockId) {
+            if (size > 0 && blockIds[size - 1] == blockId) {
+                return;
+            }
+            if (size == blockIds.length) {
+                blockIds = Arrays.copyOf(blockIds, size * 2);
+            }
+            blockIds[size++] = blockId;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(blockIds, size);
+        }
+    }
+}
@@ -0,0 +1,337 @@
+package com.example.markdowneditor;
+
+import android.app.Application;
+import android.net.Uri;
+import android.os.AsyncTask;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.lifecycle.AndroidViewModel;
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MutableLiveData;
+
+import java.io.IOException;
+
+/**
+ * Состояние просмотра документа, переживающее смену конфигурации: исходный текст, результат
+ * разбора, парсер с кэшем и загрузками изображений, позиция прокрутки и текущее совпадение поиска.
+ * Ресурсы освобождаются только когда пользователь действительно уходит с экрана.
+ */
+public class DocumentViewModel extends AndroidViewModel {
+    private static final String LOG_TAG = "DocumentViewModel";
+    static final int MAX_EDITABLE_FILE_BYTES = 1024 * 1024;
+
+    private final MarkdownParser parser;
+    private final MutableLiveData<MarkdownDocument> document = new MutableLiveData<>();
+    private final MutableLiveData<Exception> parseError = new MutableLiveData<>();
+    private final MutableLiveData<Boolean> isParsing = new MutableLiveData<>(false);
+
+    private ParseTask parseTask;
+    private String content;
+    private String documentUrl;
+    private MappedMarkdownDocument mappedDocument;
+    private int requestedSourceLine;
+    private long renderStartNanos;
+
+    private SectionedDocumentRenderer.ScrollAnchor savedScrollAnchor;
+    private int savedMatchIndex = -1;
+    private String searchQuery = "";
+
+    public DocumentViewModel(@NonNull Application application) {
+        super(application);
+        parser = new MarkdownParser(application);
+    }
+
+    public MarkdownParser getParser() {
+        return parser;
+    }
+
+    public LiveData<MarkdownDocument> getDocument() {
+        return document;
+    }
+
+    public LiveData<Exception> getParseError() {
+        return parseError;
+    }
+
+    public LiveData<Boolean> isParsing() {
+        return isParsing;
+    }
+
+    /**
+     * Загрузка уже была запущена этой или предыдущей Activity (возможно, ещё не завершилась)
+     */
+    public boolean hasStartedLoading() {
+        return content != null || parseTask != null || mappedDocument != null;
+    }
+
+    public String getContent() {
+        return content;
+    }
+
+    /**
+     * Отображённые в память файлы передаются в редактор целиком, поэтому редактировать
+     * можно только файлы не больше {@link #MAX_EDITABLE_FILE_BYTES}
+     */
+    public boolean canEditContent() {
+        return content != null
+                || (mappedDocument != null && mappedDocument.getFile().getSizeBytes() <= MAX_EDITABLE_FILE_BYTES);
+    }
+
+    /**
+     * Текст для редактора; для отображённого файла декодируется весь файл
+     */
+    public String readContentForEditing() {
+        if (content == null && canEditContent()) {
+            return mappedDocument.getFile().readAll();
+        }
+        return content;
+    }
+
+    /**
+     * Адрес документа в сети или null, если документ открыт из файла
+     */
+    public String getDocumentUrl() {
+        return documentUrl;
+    }
+
+    /**
+     * Задаёт адрес, относительно которого разрешаются ссылки документа
+     */
+    public void setDocumentUrl(String documentUrl) {
+        this.documentUrl = documentUrl;
+        parser.setBaseDocumentUrl(documentUrl);
+    }
+
+    public int getRequestedSourceLine() {
+        return requestedSourceLine;
+    }
+
+    public long getRenderStartNanos() {
+        return renderStartNanos;
+    }
+
+    public String getSearchQuery() {
+        return searchQuery;
+    }
+
+    public void setSearchQuery(String searchQuery) {
+        this.searchQuery = searchQuery;
+    }
+
+    /**
+     * Запускает фоновый разбор нового содержимого, отменяя предыдущий незавершённый разбор
+     */
+    public void loadContent(String newContent, int sourceLineIndex) {
+        startLoading(newContent, sourceLineIndex);
+        parseTask.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
+    }
+
+    /**
+     * Открывает документ по ссылке. Документ, уже предзагруженный {@link LinkedDocumentPrefetcher},
+     * показывается сразу, без повторной загрузки и разбора.
+     */
+    public void loadUrl(String url) {
+        setDocumentUrl(url);
+        LinkedDocumentPrefetcher.PrefetchedDocument prefetchedDocument =
+                LinkedDocumentPrefetcher.getInstance().get(url);
+        if (prefetchedDocument != null) {
+            cancelParsing();
+            closeMappedDocument();
+            content = prefetchedDocument.content;
+            requestedSourceLine = 0;
+            renderStartNanos = System.nanoTime();
+            clearSavedViewState();
+            document.setValue(prefetchedDocument.document);
+            return;
+        }
+
+        startLoading(null, 0);
+        parseTask.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
+    }
+
+    /**
+     * Открывает локальный файл через отображение в память, не читая его целиком
+     */
+    public void loadFile(Uri fileUri, int sourceLineIndex) {
+        setDocumentUrl(null);
+        startLoading(null, sourceLineIndex);
+        parseTask.fileUri = fileUri;
+        parseTask.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
+    }
+
+    private void startLoading(String newContent, int sourceLineIndex) {
+        cancelParsing();
+        closeMappedDocument();
+        content = newContent;
+        requestedSourceLine = sourceLineIndex;
+        renderStartNanos = System.nanoTime();
+        clearSavedViewState();
+        isParsing.setValue(true);
+        parseTask = new ParseTask(newContent, documentUrl);
+    }
+
+    private void cancelParsing() {
+        if (parseTask != null) {
+            parseTask.cancel(false);
+            parseTask = null;
+        }
+        isParsing.setValue(false);
+    }
+
+    /**
+     * Отображение файла остаётся действительным после закрытия дескриптора, поэтому
+     * документ можно закрывать, даже если его блоки ещё дорисовываются
+     */
+    private void closeMappedDocument() {
+        if (mappedDocument != null) {
+            closeQuietly(mappedDocument);
+            mappedDocument = null;
+        }
+    }
+
+    private static void closeQuietly(MappedMarkdownDocument documentToClose) {
+        try {
+            documentToClose.close();
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "Ошибка закрытия файла", e);
+        }
+    }
+
+    private void clearSavedViewState() {
+        savedScrollAnchor = null;
+        savedMatchIndex = -1;
+    }
+
+    /**
+     * Запоминает позицию прокрутки и совпадение поиска перед пересозданием Activity
+     */
+    public void saveViewState(SectionedDocumentRenderer.ScrollAnchor scrollAnchor, int matchIndex) {
+        savedScrollAnchor = scrollAnchor;
+        savedMatchIndex = matchIndex;
+    }
+
+    /**
+     * Возвращает сохранённую позицию прокрутки один раз, после чего она сбрасывается
+     */
+    public SectionedDocumentRenderer.ScrollAnchor consumeScrollAnchor() {
+        SectionedDocumentRenderer.ScrollAnchor scrollAnchor = savedScrollAnchor;
+        savedScrollAnchor = null;
+        return scrollAnchor;
+    }
+
+    public int consumeMatchIndex() {
+        int matchIndex = savedMatchIndex;
+        savedMatchIndex = -1;
+        return matchIndex;
+    }
+
+    @Override
+    protected void onCleared() {
+        if (parseTask != null) {
+            parseTask.cancel(false);
+        }
+        closeMappedDocument();
+        parser.cleanup();
+    }
+
+    /**
+     * Разбирает переданный текст; если его нет — отображает в память локальный файл
+     * или сначала скачивает документ по адресу
+     */
+    private class ParseTask extends AsyncTask<Void, Void, MarkdownDocument> {
+        private final String documentUrl;
+        private String markdownContent;
+        private Uri fileUri;
+        private Exception error;
+
+        ParseTask(String markdownContent, String documentUrl) {
+            this.markdownContent = markdownContent;
+            this.documentUrl = documentUrl;
+        }
+
+        @Override
+        protected MarkdownDocument doInBackground(Void... voids) {
+            try {
+                if (fileUri != null) {
+                    return openMappedDocument();
+                }
+                if (markdownContent == null) {
+                    long stageStart = parser.getRenderMetrics().beginStage(RenderMetrics.Stage.READ);
+                    try {
+                        markdownContent = MarkdownDownloader.download(documentUrl);
+                    } finally {
+                        parser.getRenderMetrics().endStage(RenderMetrics.Stage.READ, stageStart);
+                    }
+                    MarkdownDocument parsedDocument = parseWithHeightEstimates(markdownContent);
+                    LinkedDocumentPrefetcher.getInstance().put(documentUrl, markdownContent, parsedDocument);
+                    return parsedDocument;
+                }
+                return parseWithHeightEstimates(markdownContent);
+            } catch (Exception e) {
+                error = e;
+                return null;
+            }
+        }
+
+        /**
+         * Оценки высоты блоков для {@link SectionedDocumentRenderer} считаются здесь же, в фоне,
+         * отдельным этапом, чтобы не смешиваться с разбором и индексом
+         */
+        private MarkdownDocument parseWithHeightEstimates(String markdownContent) {
+            MarkdownDocument parsedDocument = parser.parseDocument(markdownContent);
+            RenderMetrics renderMetrics = parser.getRenderMetrics();
+            long stageStart = renderMetrics.beginStage(RenderMetrics.Stage.ESTIMATE);
+            try {
+                parsedDocument.setEstimatedBlockHeights(SectionedDocumentRenderer.estimateBlockHeights(
+                        parsedDocument.getBlocks(), getApplication().getResources().getDisplayMetrics()));
+            } finally {
+                renderMetrics.endStage(RenderMetrics.Stage.ESTIMATE, stageStart);
+            }
+            return parsedDocument;
+        }
+
+        private MappedMarkdownDocument openMappedDocument() throws IOException {
+            RenderMetrics renderMetrics = parser.getRenderMetrics();
+            MappedMarkdownFile mappedFile;
+            long stageStart = renderMetrics.beginStage(RenderMetrics.Stage.READ);
+            try {
+                mappedFile = MappedMarkdownFile.open(getApplication().getContentResolver(), fileUri);
+            } finally {
+                renderMetrics.endStage(RenderMetrics.Stage.READ, stageStart);
+            }
+
+            stageStart = renderMetrics.beginStage(RenderMetrics.Stage.PARSE_BLOCKS);
+            try {
+                return MappedMarkdownDocument.build(mappedFile);
+            } catch (RuntimeException e) {
+                mappedFile.close();
+                throw e;
+            } finally {
+                renderMetrics.endStage(RenderMetrics.Stage.PARSE_BLOCKS, stageStart);
+            }
+        }
+
+        @Override
+        protected void onPostExecute(MarkdownDocument parsedDocument) {
+            parseTask = null;
+            isParsing.setValue(false);
+            if (parsedDocument == null) {
+                parseError.setValue(error);
+                return;
+            }
+            content = markdownContent;
+            if (parsedDocument instanceof MappedMarkdownDocument) {
+                mappedDocument = (MappedMarkdownDocument) parsedDocument;
+            }
+            document.setValue(parsedDocument);
+        }
+
+        @Override
+        protected void onCancelled(MarkdownDocument parsedDocument) {
+            if (parsedDocument instanceof MappedMarkdownDocument) {
+                closeQuietly((MappedMarkdownDocument) parsedDocument);
+            }
+        }
+    }
+}
@@ -1,28 +1,81 @@
 package com.example.markdowneditor;
 
 import android.annotation.SuppressLint;
+import android.content.ActivityNotFoundException;
 import android.content.Intent;
+import android.content.pm.ApplicationInfo;
 import android.graphics.Color;
+import android.net.Uri;
+import android.os.AsyncTask;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.text.Editable;
+import android.text.TextWatcher;
 import android.util.Log;
 import android.view.View;
-import android.widget.LinearLayout;
+import android.view.ViewGroup;
+import android.view.ViewTreeObserver;
+import android.widget.ArrayAdapter;
+import android.widget.Button;
+import android.widget.EditText;
+import android.widget.ListView;
+import android.widget.ProgressBar;
+import android.widget.ScrollView;
 import android.widget.TextView;
 import android.widget.Toast;
 
 import androidx.activity.result.ActivityResultLauncher;
 import androidx.activity.result.contract.ActivityResultContracts;
 import androidx.appcompat.app.AppCompatActivity;
+import androidx.core.view.GravityCompat;
+import androidx.drawerlayout.widget.DrawerLayout;
+import androidx.lifecycle.ViewModelProvider;
 
 import com.google.android.material.floatingactionbutton.FloatingActionButton;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 public class DocumentViewerActivity extends AppCompatActivity {
-    private LinearLayout container;
+    private static final long METRICS_OVERLAY_REFRESH_MS = 1000;
+
+    private InstrumentedLinearLayout container;
+    private ScrollView scrollView;
+    private DocumentViewModel viewModel;
     private MarkdownParser parser;
+    private SectionedDocumentRenderer renderer;
+    private DrawerLayout drawerLayout;
+    private ArrayAdapter<DocumentOutline.Heading> outlineAdapter;
     private FloatingActionButton fabEdit;
-    private String content;
+    private EditText searchInput;
+    private TextView searchCounter;
+    private TextView metricsOverlay;
+    private ProgressBar progressBar;
+    private String documentName;
+    private String pendingAnchor;
+
+    private MarkdownDocument document;
+    private List<DocumentSearchIndex.Match> searchMatches = Collections.emptyList();
+    private Map<Integer, List<DocumentSearchIndex.Match>> searchMatchesByBlock = Collections.emptyMap();
+    private final Set<Integer> highlightedBlocks = new HashSet<>();
+    private int currentMatchIndex = -1;
+    private int restoredMatchIndex = -1;
+    private MappedSearchTask mappedSearchTask;
+
+    private final Handler metricsHandler = new Handler(Looper.getMainLooper());
+    private final Runnable metricsOverlayRefresh = new Runnable() {
+        @Override
+        public void run() {
+            updateMetricsOverlay();
+            metricsHandler.postDelayed(this, METRICS_OVERLAY_REFRESH_MS);
+        }
+    };
 
     private final ActivityResultLauncher<Intent> editLauncher = registerForActivityResult(
             new ActivityResultContracts.StartActivityForResult(),
@@ -42,21 +95,60 @@ public class DocumentViewerActivity extends AppCompatActivity {
         setContentView(R.layout.activity_viewer);
 
         container = findViewById(R.id.container);
+        scrollView = findViewById(R.id.scroll_view);
         fabEdit = findViewById(R.id.fab_edit);
+        progressBar = findViewById(R.id.progress_bar);
+        drawerLayout = findViewById(R.id.drawer_layout);
         container.removeAllViews();
 
-        parser = new MarkdownParser(this);
+        viewModel = new ViewModelProvider(this).get(DocumentViewModel.class);
+        parser = viewModel.getParser();
+        container.setRenderMetrics(parser.getRenderMetrics());
+        renderer = new SectionedDocumentRenderer(scrollView, container, parser);
+        renderer.setBlockViewListener((blockIndex, blockView) -> {
+            applySearchHighlight(blockIndex);
+            prefetchLinkedDocuments(blockIndex);
+        });
+        parser.setLinkClickListener(this::openLink);
+        setupSearchBar();
+        setupOutlineDrawer();
+        setupMetricsOverlay();
 
-        content = getIntent().getStringExtra("content");
+        documentName = getIntent().getStringExtra("document_name");
         boolean canEdit = getIntent().getBooleanExtra("can_edit", false);
 
-        if (content == null || content.trim().isEmpty()) {
-            content = "# Ошибка\nНе удалось загрузить содержимое";
-            showError("Документ пуст или не был загружен");
-        } else {
-            displayMarkdown(content);
+        if (!viewModel.hasStartedLoading()) {
+            String content = getIntent().getStringExtra("content");
+            String documentUrl = getIntent().getStringExtra("document_url");
+            String documentUri = getIntent().getStringExtra("document_uri");
+            if (documentUri != null) {
+                parser.resetRenderMetrics();
+                viewModel.loadFile(Uri.parse(documentUri), getIntent().getIntExtra("source_line", 0));
+            } else if (documentUrl != null) {
+                parser.resetRenderMetrics();
+                pendingAnchor = Uri.parse(documentUrl).getFragment();
+                viewModel.loadUrl(documentUrl);
+            } else if (content == null || content.trim().isEmpty()) {
+                showError("Документ пуст или не был загружен");
+            } else {
+                parser.resetRenderMetrics();
+                parser.getRenderMetrics().recordStage(RenderMetrics.Stage.READ,
+                        getIntent().getLongExtra("read_duration_ns", 0));
+                viewModel.setDocumentUrl(getIntent().getStringExtra("base_url"));
+                viewModel.loadContent(content, getIntent().getIntExtra("source_line", 0));
+            }
         }
 
+        viewModel.isParsing().observe(this, isParsing ->
+                progressBar.setVisibility(isParsing ? View.VISIBLE : View.GONE));
+        viewModel.getDocument().observe(this, this::showParsedDocument);
+        viewModel.getParseError().observe(this, parseError -> {
+            if (parseError != null) {
+                showError("Ошибка при обработке Markdown: " + parseError.getMessage());
+                Log.e("MarkdownError", "Ошибка парсинга", parseError);
+            }
+        });
+
         setupEditButton(canEdit);
     }
 
@@ -69,7 +161,290 @@ public class DocumentViewerActivity extends AppCompatActivity {
         }
     }
 
+    private void setupSearchBar() {
+        searchInput = findViewById(R.id.et_search);
+        searchCounter = findViewById(R.id.tv_search_counter);
+        searchInput.setSaveEnabled(false);
+        searchInput.setText(viewModel.getSearchQuery());
+        Button btnPrev = findViewById(R.id.btn_search_prev);
+        Button btnNext = findViewById(R.id.btn_search_next);
+
+        searchInput.addTextChangedListener(new TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+            }
+
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) {
+            }
+
+            @Override
+            public void afterTextChanged(Editable s) {
+                viewModel.setSearchQuery(s.toString());
+                restoredMatchIndex = -1;
+                runSearch(s.toString(), true);
+            }
+        });
+        searchInput.setOnEditorActionListener((v, actionId, event) -> {
+            moveToMatch(currentMatchIndex + 1);
+            return true;
+        });
+        btnPrev.setOnClickListener(v -> moveToMatch(currentMatchIndex - 1));
+        btnNext.setOnClickListener(v -> moveToMatch(currentMatchIndex + 1));
+    }
+
+    private void setupOutlineDrawer() {
+        ListView outlineList = findViewById(R.id.outline_list);
+        outlineAdapter = new ArrayAdapter<DocumentOutline.Heading>(
+                this, android.R.layout.simple_list_item_1, new ArrayList<>()) {
+            @Override
+            public View getView(int position, View convertView, ViewGroup parent) {
+                TextView headingItem = (TextView) super.getView(position, convertView, parent);
+                DocumentOutline.Heading heading = getItem(position);
+                headingItem.setText(heading.title);
+                int indent = (int) (16 * (heading.getDepth() + 1) * getResources().getDisplayMetrics().density);
+                headingItem.setPadding(indent, headingItem.getPaddingTop(),
+                        headingItem.getPaddingRight(), headingItem.getPaddingBottom());
+                return headingItem;
+            }
+        };
+        outlineList.setAdapter(outlineAdapter);
+        outlineList.setOnItemClickListener((parent, view, position, id) -> {
+            renderer.scrollToSection(outlineAdapter.getItem(position).sectionIndex);
+            drawerLayout.closeDrawer(GravityCompat.START);
+        });
+
+        Button btnOutline = findViewById(R.id.btn_outline);
+        btnOutline.setOnClickListener(v -> drawerLayout.openDrawer(GravityCompat.START));
+    }
+
+    /**
+     * Оверлей с метриками отрисовки показывается только в отладочных сборках; нажатие скрывает его
+     */
+    private void setupMetricsOverlay() {
+        metricsOverlay = findViewById(R.id.tv_metrics_overlay);
+        boolean isDebuggable = (getApplicationInfo().flags & ApplicationInfo.FLAG_DEBUGGABLE) != 0;
+        metricsOverlay.setVisibility(isDebuggable ? View.VISIBLE : View.GONE);
+        metricsOverlay.setOnClickListener(v -> {
+            metricsOverlay.setVisibility(View.GONE);
+            metricsHandler.removeCallbacks(metricsOverlayRefresh);
+        });
+    }
+
+    private void updateMetricsOverlay() {
+        if (metricsOverlay.getVisibility() == View.VISIBLE) {
+            metricsOverlay.setText(parser.getRenderMetrics().formatSummary(countLiveViews()));
+        }
+    }
+
+    private int countLiveViews() {
+        return MarkdownParser.countViews(container) - 1;
+    }
+
+    private String getDocumentLabel() {
+        return documentName != null ? documentName : "untitled";
+    }
+
+    /**
+     * Фиксирует время до первого кадра с содержимым и пишет сводку метрик в logcat
+     */
+    private void trackFirstContent(long renderStartNanos) {
+        container.getViewTreeObserver().addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
+            @Override
+            public boolean onPreDraw() {
+                container.getViewTreeObserver().removeOnPreDrawListener(this);
+                RenderMetrics renderMetrics = parser.getRenderMetrics();
+                renderMetrics.recordFirstContent(System.nanoTime() - renderStartNanos);
+                renderMetrics.logSummary(getDocumentLabel(), countLiveViews());
+                return true;
+            }
+        });
+    }
+
+    /**
+     * Документ в памяти ищется сразу по индексу; отображённый в память файл просматривается в фоне
+     */
+    private void runSearch(String query, boolean scrollToFirstMatch) {
+        if (document == null) {
+            return;
+        }
+        if (mappedSearchTask != null) {
+            mappedSearchTask.cancel(false);
+            mappedSearchTask = null;
+        }
+
+        if (document instanceof MappedMarkdownDocument) {
+            if (query.trim().isEmpty()) {
+                showSearchMatches(Collections.emptyList(), false);
+                return;
+            }
+            mappedSearchTask = new MappedSearchTask((MappedMarkdownDocument) document, scrollToFirstMatch);
+            mappedSearchTask.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR, query);
+            return;
+        }
+        showSearchMatches(document.getSearchIndex().search(query), scrollToFirstMatch);
+    }
+
+    private void showSearchMatches(List<DocumentSearchIndex.Match> foundMatches, boolean scrollToFirstMatch) {
+        searchMatches = foundMatches;
+        searchMatchesByBlock = new LinkedHashMap<>();
+        for (DocumentSearchIndex.Match match : searchMatches) {
+            List<DocumentSearchIndex.Match> blockMatches = searchMatchesByBlock.get(match.blockIndex);
+            if (blockMatches == null) {
+                blockMatches = new ArrayList<>();
+                searchMatchesByBlock.put(match.blockIndex, blockMatches);
+            }
+            blockMatches.add(match);
+        }
+
+        for (Integer blockIndex : new ArrayList<>(highlightedBlocks)) {
+            if (!searchMatchesByBlock.containsKey(blockIndex)) {
+                View blockView = getBlockView(blockIndex);
+                if (blockView != null) {
+                    SearchHighlighter.clear(blockView);
+                }
+                highlightedBlocks.remove(blockIndex);
+            }
+        }
+
+        currentMatchIndex = searchMatches.isEmpty() ? -1 : 0;
+        if (restoredMatchIndex >= 0 && restoredMatchIndex < searchMatches.size()) {
+            currentMatchIndex = restoredMatchIndex;
+        }
+        restoredMatchIndex = -1;
+        for (Integer blockIndex : searchMatchesByBlock.keySet()) {
+            applySearchHighlight(blockIndex);
+        }
+        updateSearchCounter();
+        if (scrollToFirstMatch) {
+            scrollToCurrentMatch();
+        }
+    }
+
+    private void moveToMatch(int matchIndex) {
+        if (searchMatches.isEmpty()) {
+            return;
+        }
+
+        int previousBlockIndex = searchMatches.get(currentMatchIndex).blockIndex;
+        currentMatchIndex = (matchIndex + searchMatches.size()) % searchMatches.size();
+        applySearchHighlight(previousBlockIndex);
+        applySearchHighlight(searchMatches.get(currentMatchIndex).blockIndex);
+        updateSearchCounter();
+        scrollToCurrentMatch();
+    }
+
+    /**
+     * Подсвечивает совпадения в блоке; вызывается также для блоков, View которых создано уже после поиска
+     */
+    private void applySearchHighlight(int blockIndex) {
+        View blockView = getBlockView(blockIndex);
+        List<DocumentSearchIndex.Match> blockMatches = searchMatchesByBlock.get(blockIndex);
+        if (blockView == null || blockMatches == null) {
+            return;
+        }
+
+        DocumentSearchIndex.Match currentMatch = currentMatchIndex >= 0
+                ? searchMatches.get(currentMatchIndex)
+                : null;
+        SearchHighlighter.highlight(blockView, blockMatches, currentMatch);
+        highlightedBlocks.add(blockIndex);
+    }
+
+    private void scrollToCurrentMatch() {
+        if (currentMatchIndex < 0) {
+            return;
+        }
+
+        renderer.scrollToBlock(searchMatches.get(currentMatchIndex).blockIndex, true);
+    }
+
+    private void updateSearchCounter() {
+        if (searchMatches.isEmpty()) {
+            searchCounter.setText(searchInput.length() > 0 ? "0/0" : "");
+        } else {
+            boolean isTruncated = document instanceof MappedMarkdownDocument
+                    && searchMatches.size() >= MappedMarkdownDocument.MAX_SEARCH_MATCHES;
+            searchCounter.setText((currentMatchIndex + 1) + "/" + searchMatches.size() + (isTruncated ? "+" : ""));
+        }
+    }
+
+    private View getBlockView(int blockIndex) {
+        return renderer.getBlockView(blockIndex);
+    }
+
+    /**
+     * Якоря прокручивают текущий документ, Markdown-документы открываются во встроенном
+     * просмотрщике, остальные ссылки — во внешнем приложении, если их схема разрешена
+     * (см. {@link InlineMarkup#isAllowedLinkUrl})
+     */
+    private void openLink(String resolvedUrl) {
+        if (!InlineMarkup.isAllowedLinkUrl(resolvedUrl)) {
+            Toast.makeText(this, "Ссылки такого типа не открываются", Toast.LENGTH_SHORT).show();
+            return;
+        }
+        Uri linkUri = Uri.parse(resolvedUrl);
+        String documentUrl = viewModel.getDocumentUrl();
+        boolean isSameDocument = resolvedUrl.startsWith("#")
+                || (documentUrl != null && linkUri.getFragment() != null
+                && resolvedUrl.startsWith(documentUrl + "#"));
+        if (isSameDocument) {
+            scrollToAnchor(linkUri.getFragment());
+            return;
+        }
+
+        if (MarkdownDownloader.isMarkdownDocumentUrl(resolvedUrl)) {
+            Intent linkedDocumentIntent = new Intent(this, DocumentViewerActivity.class);
+            linkedDocumentIntent.putExtra("document_url", resolvedUrl);
+            linkedDocumentIntent.putExtra("document_name", resolvedUrl);
+            linkedDocumentIntent.putExtra("can_edit", true);
+            startActivity(linkedDocumentIntent);
+            return;
+        }
+
+        try {
+            startActivity(new Intent(Intent.ACTION_VIEW, linkUri));
+        } catch (ActivityNotFoundException e) {
+            Toast.makeText(this, "Нет приложения для открытия ссылки", Toast.LENGTH_SHORT).show();
+        }
+    }
+
+    private void scrollToAnchor(String anchor) {
+        if (document == null || anchor == null) {
+            return;
+        }
+        DocumentOutline.Heading heading = document.getOutline().findHeadingByAnchor(anchor);
+        if (heading != null) {
+            renderer.scrollToSection(heading.sectionIndex);
+        }
+    }
+
+    /**
+     * Блоки создаются только рядом с видимой областью, поэтому в фоне загружаются документы,
+     * на которые пользователь вот-вот может перейти
+     */
+    private void prefetchLinkedDocuments(int blockIndex) {
+        MarkdownBlock block = renderer.getDocument().getBlocks().get(blockIndex);
+        if (block.getType() != MarkdownBlock.Type.PARAGRAPH) {
+            return;
+        }
+        for (InlineMarkup.Span inlineSpan : block.getFormattedText().spans) {
+            if (inlineSpan.style != InlineMarkup.Style.LINK) {
+                continue;
+            }
+            String resolvedUrl = parser.resolveLinkUrl(inlineSpan.url);
+            if (MarkdownDownloader.isMarkdownDocumentUrl(resolvedUrl)) {
+                LinkedDocumentPrefetcher.getInstance().prefetch(resolvedUrl);
+            }
+        }
+    }
+
     private void launchEditor() {
+        if (viewModel.hasStartedLoading() && !viewModel.canEditContent()) {
+            Toast.makeText(this, "Файл слишком большой для редактирования", Toast.LENGTH_SHORT).show();
+            return;
+        }
+        String content = viewModel.readContentForEditing();
         if (content == null) {
             Toast.makeText(this, "Нет содержимого для редактирования", Toast.LENGTH_SHORT).show();
             return;
@@ -80,22 +455,72 @@ public class DocumentViewerActivity extends AppCompatActivity {
         editLauncher.launch(editIntent);
     }
 
-    private void displayMarkdown(String markdown) {
+    /**
+     * Отображает разобранный документ. После смены конфигурации восстанавливает сохранённую
+     * позицию прокрутки и текущее совпадение поиска, иначе открывает секцию, содержащую
+     * запрошенную строку исходного текста.
+     */
+    private void showParsedDocument(MarkdownDocument parsedDocument) {
         try {
-            container.removeAllViews();
-            List<View> views = parser.parseMarkdownText(markdown);
-            for (View view : views) {
-                container.addView(view);
+            highlightedBlocks.clear();
+            document = parsedDocument;
+            DocumentOutline outline = document.getOutline();
+            SectionedDocumentRenderer.ScrollAnchor scrollAnchor = viewModel.consumeScrollAnchor();
+            boolean isRestoring = scrollAnchor != null;
+            if (isRestoring) {
+                renderer.showDocument(document, scrollAnchor.blockIndex, scrollAnchor.offsetPixels);
+            } else {
+                DocumentOutline.Heading anchorHeading = pendingAnchor != null
+                        ? outline.findHeadingByAnchor(pendingAnchor)
+                        : null;
+                int initialSection = anchorHeading != null
+                        ? anchorHeading.sectionIndex
+                        : outline.findSectionForSourceLine(viewModel.getRequestedSourceLine());
+                renderer.showDocument(document, outline.getSectionStartBlock(initialSection), 0);
             }
+            pendingAnchor = null;
+            outlineAdapter.clear();
+            outlineAdapter.addAll(outline.getHeadings());
+
+            restoredMatchIndex = viewModel.consumeMatchIndex();
+            runSearch(searchInput.getText().toString(), !isRestoring);
+            trackFirstContent(viewModel.getRenderStartNanos());
         } catch (Exception e) {
             showError("Ошибка при обработке Markdown: " + e.getMessage());
-            Log.e("MarkdownError", "Ошибка парсинга", e);
+            Log.e("MarkdownError", "Ошибка отображения", e);
+        }
+    }
+
+    /**
+     * Поиск по отображённому в память файлу: окна разбираются по очереди вне главного потока
+     */
+    private class MappedSearchTask extends AsyncTask<String, Void, List<DocumentSearchIndex.Match>> {
+        private final MappedMarkdownDocument searchedDocument;
+        private final boolean scrollToFirstMatch;
+
+        MappedSearchTask(MappedMarkdownDocument searchedDocument, boolean scrollToFirstMatch) {
+            this.searchedDocument = searchedDocument;
+            this.scrollToFirstMatch = scrollToFirstMatch;
+        }
+
+        @Override
+        protected List<DocumentSearchIndex.Match> doInBackground(String... queries) {
+            return searchedDocument.search(queries[0], this::isCancelled);
+        }
+
+        @Override
+        protected void onPostExecute(List<DocumentSearchIndex.Match> foundMatches) {
+            mappedSearchTask = null;
+            if (document == searchedDocument) {
+                showSearchMatches(foundMatches, scrollToFirstMatch);
+            }
         }
     }
 
     private void updateContent(String newContent) {
-        this.content = newContent;
-        displayMarkdown(newContent);
+        parser.resetRenderMetrics();
+        renderer.cancelPendingRendering();
+        viewModel.loadContent(newContent, 0);
     }
 
     private void showError(String message) {
@@ -105,11 +530,34 @@ public class DocumentViewerActivity extends AppCompatActivity {
         container.addView(errorView);
     }
 
+    @Override
+    protected void onResume() {
+        super.onResume();
+        if (metricsOverlay.getVisibility() == View.VISIBLE) {
+            metricsHandler.post(metricsOverlayRefresh);
+        }
+    }
+
+    @Override
+    protected void onPause() {
+        super.onPause();
+        metricsHandler.removeCallbacks(metricsOverlayRefresh);
+    }
+
     @Override
     protected void onDestroy() {
         super.onDestroy();
-        if (parser != null) {
-            parser.cleanup();
+        if (isChangingConfigurations()) {
+            if (document != null) {
+                viewModel.saveViewState(renderer.captureScrollAnchor(), currentMatchIndex);
+            }
+        } else if (document != null) {
+            parser.getRenderMetrics().logSummary(getDocumentLabel(), countLiveViews());
+        }
+        if (mappedSearchTask != null) {
+            mappedSearchTask.cancel(false);
         }
+        parser.setLinkClickListener(null);
+        renderer.release();
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,294 @@
+package com.example.markdowneditor;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Отрисовка {@link MarkdownDocument} в статический HTML без Android-зависимостей.
+ * Каждый блок превращается в тот же элемент, что и в {@link MarkdownParser}: текст блоков берётся
+ * из {@link MarkdownBlock#getPlainText()}, строчные стили абзацев — из {@link InlineMarkup},
+ * а стили страницы повторяют размеры и отступы View, поэтому страница выглядит так же, как в приложении.
+ * <p>
+ * HTML пишется сразу в {@link Writer}, без промежуточной строки на весь документ.
+ */
+public final class HtmlRenderer {
+    private static final String PAGE_STYLE = ""
+            + "body{font-family:sans-serif;font-size:16px;margin:16px;}"
+            + "p,td,th,h1,h2,h3,h4,h5,h6{white-space:pre-wrap;}"
+            + "p{margin:0;padding:4px 0;}"
+            + "h1,h2,h3,h4,h5,h6{font-weight:bold;margin:0;padding:8px 0 4px 0;}"
+            + "h1{font-size:22px;}h2{font-size:20px;}h3{font-size:18px;}"
+            + "h4{font-size:16px;}h5{font-size:14px;}h6{font-size:12px;}"
+            + "p.list-item{padding:0 0 0 16px;}"
+            + "pre{background:#f0f0f0;font-size:14px;padding:8px;margin:0;white-space:pre-wrap;}"
+            + "table{width:100%;border-collapse:collapse;border-bottom:1px solid #ccc;}"
+            + "td,th{padding:4px 8px;text-align:start;}th{font-weight:bold;}"
+            + "img{max-width:100%;padding:8px 0;}";
+
+    private final String baseDocumentUrl;
+    private final boolean rewritesMarkdownLinks;
+
+    /**
+     * @param baseDocumentUrl       базовый URL для относительных ссылок, как в {@link MarkdownParser#setBaseDocumentUrl}
+     * @param rewritesMarkdownLinks заменять ли в относительных ссылках .md на .html, чтобы ссылки
+     *                              вели на соседние сконвертированные страницы
+     */
+    public HtmlRenderer(String baseDocumentUrl, boolean rewritesMarkdownLinks) {
+        this.baseDocumentUrl = baseDocumentUrl;
+        this.rewritesMarkdownLinks = rewritesMarkdownLinks;
+    }
+
+    /**
+     * Пишет полную HTML-страницу с документом
+     */
+    public void renderPage(MarkdownDocument document, String title, Writer writer) throws IOException {
+        renderPage(document.getBlocks(), title, writer);
+    }
+
+    /**
+     * То же для уже разобранных блоков, без построения {@link MarkdownDocument} и его индексов
+     */
+    public void renderPage(List<MarkdownBlock> blocks, String title, Writer writer) throws IOException {
+        writer.write("<!DOCTYPE html>\n<html>\n<head>\n<meta charset=\"utf-8\">\n"
+                + "<meta name=\"viewport\" content=\"width=device-width, initial-scale=1\">\n<title>");
+        writeEscaped(title, writer);
+        writer.write("</title>\n<style>");
+        writer.write(PAGE_STYLE);
+        writer.write("</style>\n</head>\n<body>\n");
+        renderBlocks(blocks, writer);
+        writer.write("</body>\n</html>\n");
+    }
+
+    /**
+     * Пишет только разметку блоков, по одному элементу верхнего уровня на блок
+     */
+    public void renderBlocks(List<MarkdownBlock> blocks, Writer writer) throws IOException {
+        for (MarkdownBlock block : blocks) {
+            renderBlock(block, writer);
+            writer.write('\n');
+        }
+    }
+
+    private void renderBlock(MarkdownBlock block, Writer writer) throws IOException {
+        switch (block.getType()) {
+            case HEADING:
+                renderHeading(block, writer);
+                break;
+            case UNORDERED_LIST_ITEM:
+            case ORDERED_LIST_ITEM:
+                // Маркер и номер уже входят в текст блока, как и в приложении
+                writer.write("<p class=\"list-item\">");
+                writeEscaped(block.getPlainText(), writer);
+                writer.write("</p>");
+                break;
+            case CODE_BLOCK:
+                writer.write("<pre><code>");
+                writeEscaped(block.getPlainText(), writer);
+                writer.write("</code></pre>");
+                break;
+            case TABLE:
+                renderTable(block.getTableRows(), writer);
+                break;
+            case IMAGE:
+                renderImage(block, writer);
+                break;
+            case PARAGRAPH:
+            default:
+                writer.write("<p>");
+                renderFormattedText(block.getFormattedText(), writer);
+                writer.write("</p>");
+                break;
+        }
+    }
+
+    private void renderHeading(MarkdownBlock block, Writer writer) throws IOException {
+        int level = Math.max(1, Math.min(6, block.getHeadingLevel()));
+        writer.write("<h" + level + " id=\"");
+        writeEscaped(DocumentOutline.toAnchor(block.getPlainText()), writer);
+        writer.write("\">");
+        writeEscaped(block.getPlainText(), writer);
+        writer.write("</h" + level + ">");
+    }
+
+    /**
+     * Стили могут пересекаться, поэтому текст режется по всем границам стилей,
+     * и каждый отрезок оборачивается в теги покрывающих его стилей
+     */
+    private void renderFormattedText(InlineMarkup.FormattedText formattedText, Writer writer) throws IOException {
+        String text = formattedText.text;
+        List<InlineMarkup.Span> spans = formattedText.spans;
+        if (spans.isEmpty()) {
+            writeEscaped(text, writer);
+            return;
+        }
+
+        int segmentStart = 0;
+        while (segmentStart < text.length()) {
+            int segmentEnd = text.length();
+            for (InlineMarkup.Span span : spans) {
+                if (span.getStart() > segmentStart && span.getStart() < segmentEnd) {
+                    segmentEnd = span.getStart();
+                }
+                if (span.getEnd() > segmentStart && span.getEnd() < segmentEnd) {
+                    segmentEnd = span.getEnd();
+                }
+            }
+
+            InlineMarkup.Span linkSpan = findCoveringSpan(spans, InlineMarkup.Style.LINK, segmentStart, segmentEnd);
+            String linkUrl = linkSpan != null ? resolveLinkUrl(linkSpan.url) : null;
+            if (linkUrl != null && !InlineMarkup.isAllowedLinkUrl(linkUrl)) {
+                // javascript:, data: и прочие схемы выводятся простым текстом
+                linkUrl = null;
+            }
+            boolean isBold = findCoveringSpan(spans, InlineMarkup.Style.BOLD, segmentStart, segmentEnd) != null;
+            boolean isItalic = findCoveringSpan(spans, InlineMarkup.Style.ITALIC, segmentStart, segmentEnd) != null;
+            boolean isStruck = findCoveringSpan(spans, InlineMarkup.Style.STRIKETHROUGH, segmentStart, segmentEnd) != null;
+
+            if (linkUrl != null) {
+                writer.write("<a href=\"");
+                writeEscaped(linkUrl, writer);
+                writer.write("\">");
+            }
+            if (isBold) {
+                writer.write("<strong>");
+            }
+            if (isItalic) {
+                writer.write("<em>");
+            }
+            if (isStruck) {
+                writer.write("<del>");
+            }
+            writeEscaped(text.substring(segmentStart, segmentEnd), writer);
+            if (isStruck) {
+                writer.write("</del>");
+            }
+            if (isItalic) {
+                writer.write("</em>");
+            }
+            if (isBold) {
+                writer.write("</strong>");
+            }
+            if (linkUrl != null) {
+                writer.write("</a>");
+            }
+            segmentStart = segmentEnd;
+        }
+    }
+
+    private static InlineMarkup.Span findCoveringSpan(List<InlineMarkup.Span> spans, InlineMarkup.Style style,
+                                                      int segmentStart, int segmentEnd) {
+        for (InlineMarkup.Span span : spans) {
+            if (span.style == style && span.getStart() <= segmentStart && span.getEnd() >= segmentEnd) {
+                return span;
+            }
+        }
+        return null;
+    }
+
+    private String resolveLinkUrl(String linkUrl) {
+        String resolvedUrl = InlineMarkup.resolveLinkUrl(baseDocumentUrl, linkUrl);
+        if (!rewritesMarkdownLinks || resolvedUrl.startsWith("#") || resolvedUrl.contains("://")) {
+            return resolvedUrl;
+        }
+        int pathEnd = resolvedUrl.length();
+        int fragmentStart = resolvedUrl.indexOf('#');
+        if (fragmentStart >= 0) {
+            pathEnd = fragmentStart;
+        }
+        String path = resolvedUrl.substring(0, pathEnd);
+        if (!path.toLowerCase(Locale.ROOT).matches(".*\\.(md|markdown)$")) {
+            return resolvedUrl;
+        }
+        return path.substring(0, path.lastIndexOf('.')) + ".html" + resolvedUrl.substring(pathEnd);
+    }
+
+    /**
+     * Выравнивание и заголовок повторяют {@link MarkdownParser}: первая строка жирная,
+     * а столбцы с маркером, начинающимся и заканчивающимся на ':', выровнены вправо
+     */
+    private static void renderTable(List<String[]> tableRows, Writer writer) throws IOException {
+        boolean[] isColumnRightAligned = new boolean[tableRows.get(0).length];
+        if (tableRows.size() > 1 && MarkdownBlockParser.isTableSeparatorRow(tableRows, 1)) {
+            String[] alignmentMarkers = tableRows.get(1);
+            for (int columnIndex = 0; columnIndex < alignmentMarkers.length
+                    && columnIndex < isColumnRightAligned.length; columnIndex++) {
+                String cellContent = alignmentMarkers[columnIndex].trim();
+                isColumnRightAligned[columnIndex] = cellContent.startsWith(":") && cellContent.endsWith(":");
+            }
+        }
+
+        writer.write("<table>");
+        for (int rowIndex = 0; rowIndex < tableRows.size(); rowIndex++) {
+            if (MarkdownBlockParser.isTableSeparatorRow(tableRows, rowIndex)) {
+                continue;
+            }
+            String cellTag = rowIndex == 0 ? "th" : "td";
+            writer.write("<tr>");
+            String[] rowCells = tableRows.get(rowIndex);
+            for (int cellIndex = 0; cellIndex < rowCells.length; cellIndex++) {
+                writer.write('<');
+                writer.write(cellTag);
+                if (cellIndex < isColumnRightAligned.length && isColumnRightAligned[cellIndex]) {
+                    writer.write(" style=\"text-align:end\"");
+                }
+                writer.write('>');
+                writeEscaped(rowCells[cellIndex].trim(), writer);
+                writer.write("</");
+                writer.write(cellTag);
+                writer.write('>');
+            }
+            writer.write("</tr>");
+        }
+        writer.write("</table>");
+    }
+
+    private static void renderImage(MarkdownBlock block, Writer writer) throws IOException {
+        String imageSourceUrl = block.getImageSourceUrl();
+        if (imageSourceUrl == null) {
+            writer.write("<p>");
+            writeEscaped(block.getContent(), writer);
+            writer.write("</p>");
+            return;
+        }
+        writer.write("<img src=\"");
+        writeEscaped(imageSourceUrl, writer);
+        writer.write("\" alt=\"");
+        writeEscaped(block.getPlainText(), writer);
+        writer.write("\">");
+    }
+
+    /**
+     * Экранирует текст для содержимого элемента и значения атрибута в кавычках
+     */
+    static void writeEscaped(String text, Writer writer) throws IOException {
+        int plainStart = 0;
+        for (int charIndex = 0; charIndex < text.length(); charIndex++) {
+            String replacement;
+            switch (text.charAt(charIndex)) {
+                case '&':
+                    replacement = "&amp;";
+                    break;
+                case '<':
+                    replacement = "&lt;";
+                    break;
+                case '>':
+                    replacement = "&gt;";
+                    break;
+                case '"':
+                    replacement = "&quot;";
+                    break;
+                case '\'':
+                    replacement = "&#39;";
+                    break;
+                default:
+                    continue;
+            }
+            writer.write(text, plainStart, charIndex - plainStart);
+            writer.write(replacement);
+            plainStart = charIndex + 1;
+        }
+        writer.write(text, plainStart, text.length() - plainStart);
+    }
+}
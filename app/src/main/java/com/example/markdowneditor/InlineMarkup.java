@@ -0,0 +1,187 @@
+package com.example.markdowneditor;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Платформенно-независимый разбор строчного форматирования (**жирный**, *курсив*, ~~зачёркнутый~~, ссылки).
+ * Результат содержит итоговый текст без разметки и список диапазонов стилей в нём.
+ */
+public final class InlineMarkup {
+    private static final Pattern HYPERLINK_PATTERN = Pattern.compile("\\[(.*?)\\]\\((.*?)\\)");
+
+    public enum Style {
+        BOLD,
+        ITALIC,
+        STRIKETHROUGH,
+        LINK
+    }
+
+    /**
+     * Диапазон стиля в итоговом тексте; для ссылок также хранит исходный URL
+     */
+    public static final class Span {
+        public final Style style;
+        public final String url;
+        int start;
+        int end;
+
+        Span(Style style, int start, int end, String url) {
+            this.style = style;
+            this.start = start;
+            this.end = end;
+            this.url = url;
+        }
+
+        public int getStart() {
+            return start;
+        }
+
+        public int getEnd() {
+            return end;
+        }
+    }
+
+    /**
+     * Текст после удаления разметки вместе с диапазонами стилей
+     */
+    public static final class FormattedText {
+        public final String text;
+        public final List<Span> spans;
+
+        FormattedText(String text, List<Span> spans) {
+            this.text = text;
+            this.spans = Collections.unmodifiableList(spans);
+        }
+    }
+
+    private InlineMarkup() {
+    }
+
+    public static FormattedText parse(String markdownText) {
+        StringBuilder textBuilder = new StringBuilder(markdownText);
+        List<Span> collectedSpans = new ArrayList<>();
+
+        applyFormattingBetweenDelimiters(textBuilder, collectedSpans, "**", Style.BOLD);
+        applyFormattingBetweenDelimiters(textBuilder, collectedSpans, "*", Style.ITALIC);
+        applyFormattingBetweenDelimiters(textBuilder, collectedSpans, "~~", Style.STRIKETHROUGH);
+        processHyperlinks(textBuilder, collectedSpans);
+
+        return new FormattedText(textBuilder.toString(), collectedSpans);
+    }
+
+    /**
+     * Разрешает ссылку относительно базового URL документа. Ссылки на якоря внутри документа
+     * («#раздел») и ссылки без базового URL возвращаются без изменений.
+     */
+    public static String resolveLinkUrl(String baseDocumentUrl, String linkUrl) {
+        String trimmedUrl = linkUrl.trim();
+        if (trimmedUrl.startsWith("#") || baseDocumentUrl == null || baseDocumentUrl.isEmpty()) {
+            return trimmedUrl;
+        }
+        try {
+            return new URL(new URL(baseDocumentUrl), trimmedUrl.replace(" ", "%20")).toString();
+        } catch (MalformedURLException exception) {
+            return trimmedUrl;
+        }
+    }
+
+    /**
+     * Ссылку из документа можно открыть: разрешены относительные ссылки, якоря и схемы http, https
+     * и mailto, чтобы загруженный документ не открывал javascript:, intent:, file: или content:.
+     * Схемой считается всё до первого ':', если перед ним нет '/', '?' или '#'; пробелы и управляющие
+     * символы из неё выбрасываются, как это делает браузер, чтобы "java\tscript:" не прошёл проверку.
+     */
+    public static boolean isAllowedLinkUrl(String linkUrl) {
+        StringBuilder scheme = new StringBuilder();
+        for (int charIndex = 0; charIndex < linkUrl.length(); charIndex++) {
+            char urlChar = linkUrl.charAt(charIndex);
+            if (urlChar == '/' || urlChar == '?' || urlChar == '#') {
+                return true;
+            }
+            if (urlChar == ':') {
+                String schemeName = scheme.toString().toLowerCase(Locale.ROOT);
+                return schemeName.equals("http") || schemeName.equals("https") || schemeName.equals("mailto");
+            }
+            if (urlChar > ' ') {
+                scheme.append(urlChar);
+            }
+        }
+        return true;
+    }
+
+    private static void applyFormattingBetweenDelimiters(StringBuilder textBuilder,
+                                                         List<Span> collectedSpans,
+                                                         String delimiter,
+                                                         Style style) {
+        int searchFromPosition = 0;
+        int delimiterStartPosition;
+        while ((delimiterStartPosition = textBuilder.indexOf(delimiter, searchFromPosition)) != -1) {
+            int delimiterEndPosition = textBuilder.indexOf(
+                    delimiter, delimiterStartPosition + delimiter.length());
+            if (delimiterEndPosition == -1) {
+                break;
+            }
+
+            deleteRange(textBuilder, collectedSpans,
+                    delimiterEndPosition, delimiterEndPosition + delimiter.length());
+            deleteRange(textBuilder, collectedSpans,
+                    delimiterStartPosition, delimiterStartPosition + delimiter.length());
+            collectedSpans.add(new Span(style,
+                    delimiterStartPosition,
+                    delimiterEndPosition - delimiter.length(),
+                    null));
+            searchFromPosition = delimiterEndPosition - delimiter.length();
+        }
+    }
+
+    private static void processHyperlinks(StringBuilder textBuilder, List<Span> collectedSpans) {
+        int searchFromPosition = 0;
+        Matcher hyperlinkMatcher = HYPERLINK_PATTERN.matcher(textBuilder);
+        while (hyperlinkMatcher.find(searchFromPosition)) {
+            String linkText = hyperlinkMatcher.group(1);
+            String linkUrl = hyperlinkMatcher.group(2);
+            int linkStart = hyperlinkMatcher.start();
+
+            replaceRange(textBuilder, collectedSpans, linkStart, hyperlinkMatcher.end(), linkText);
+            collectedSpans.add(new Span(Style.LINK, linkStart, linkStart + linkText.length(), linkUrl));
+
+            searchFromPosition = linkStart + linkText.length();
+            hyperlinkMatcher = HYPERLINK_PATTERN.matcher(textBuilder);
+        }
+    }
+
+    private static void deleteRange(StringBuilder textBuilder, List<Span> collectedSpans,
+                                    int rangeStart, int rangeEnd) {
+        replaceRange(textBuilder, collectedSpans, rangeStart, rangeEnd, "");
+    }
+
+    /**
+     * Заменяет диапазон текста, сдвигая уже найденные стили так же, как это делает SpannableStringBuilder
+     */
+    private static void replaceRange(StringBuilder textBuilder, List<Span> collectedSpans,
+                                     int rangeStart, int rangeEnd, String replacement) {
+        textBuilder.replace(rangeStart, rangeEnd, replacement);
+        int lengthDelta = replacement.length() - (rangeEnd - rangeStart);
+        for (Span span : collectedSpans) {
+            span.start = shiftPosition(span.start, rangeStart, rangeEnd, lengthDelta);
+            span.end = shiftPosition(span.end, rangeStart, rangeEnd, lengthDelta);
+        }
+    }
+
+    private static int shiftPosition(int position, int rangeStart, int rangeEnd, int lengthDelta) {
+        if (position >= rangeEnd) {
+            return position + lengthDelta;
+        }
+        if (position > rangeStart) {
+            return rangeStart;
+        }
+        return position;
+    }
+}
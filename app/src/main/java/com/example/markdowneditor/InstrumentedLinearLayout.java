@@ -0,0 +1,56 @@
+package com.example.markdowneditor;
+
+import android.content.Context;
+import android.util.AttributeSet;
+import android.widget.LinearLayout;
+
+/**
+ * LinearLayout, который учитывает время measure и layout своего поддерева в {@link RenderMetrics}
+ */
+public class InstrumentedLinearLayout extends LinearLayout {
+    private RenderMetrics renderMetrics;
+
+    public InstrumentedLinearLayout(Context context) {
+        super(context);
+    }
+
+    public InstrumentedLinearLayout(Context context, AttributeSet attrs) {
+        super(context, attrs);
+    }
+
+    public InstrumentedLinearLayout(Context context, AttributeSet attrs, int defStyleAttr) {
+        super(context, attrs, defStyleAttr);
+    }
+
+    public void setRenderMetrics(RenderMetrics renderMetrics) {
+        this.renderMetrics = renderMetrics;
+    }
+
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        if (renderMetrics == null) {
+            super.onMeasure(widthMeasureSpec, heightMeasureSpec);
+            return;
+        }
+        long stageStart = renderMetrics.beginStage(RenderMetrics.Stage.LAYOUT);
+        try {
+            super.onMeasure(widthMeasureSpec, heightMeasureSpec);
+        } finally {
+            renderMetrics.endStage(RenderMetrics.Stage.LAYOUT, stageStart);
+        }
+    }
+
+    @Override
+    protected void onLayout(boolean changed, int left, int top, int right, int bottom) {
+        if (renderMetrics == null) {
+            super.onLayout(changed, left, top, right, bottom);
+            return;
+        }
+        long stageStart = renderMetrics.beginStage(RenderMetrics.Stage.LAYOUT);
+        try {
+            super.onLayout(changed, left, top, right, bottom);
+        } finally {
+            renderMetrics.endStage(RenderMetrics.Stage.LAYOUT, stageStart);
+        }
+    }
+}
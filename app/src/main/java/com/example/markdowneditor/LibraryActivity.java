@@ -0,0 +1,220 @@
+package com.example.markdowneditor;
+
+import android.content.Intent;
+import android.content.SharedPreferences;
+import android.net.Uri;
+import android.os.AsyncTask;
+import android.os.Bundle;
+import android.text.Editable;
+import android.text.TextWatcher;
+import android.util.Log;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.ArrayAdapter;
+import android.widget.Button;
+import android.widget.EditText;
+import android.widget.ListView;
+import android.widget.ProgressBar;
+import android.widget.TextView;
+
+import androidx.activity.result.ActivityResultLauncher;
+import androidx.activity.result.contract.ActivityResultContracts;
+import androidx.appcompat.app.AppCompatActivity;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class LibraryActivity extends AppCompatActivity {
+    private static final String TAG = "LibraryActivity";
+    private static final String PREFERENCES_NAME = "library";
+    private static final String PREF_TREE_URI = "tree_uri";
+
+    private LibraryDatabase database;
+    private SharedPreferences preferences;
+    private TextView statusText;
+    private ProgressBar progressBar;
+    private EditText searchInput;
+    private ArrayAdapter<LibraryDatabase.SearchResult> resultsAdapter;
+
+    private IndexingTask indexingTask;
+    private SearchTask searchTask;
+
+    private final ActivityResultLauncher<Uri> folderPickerLauncher = registerForActivityResult(
+            new ActivityResultContracts.OpenDocumentTree(),
+            treeUri -> {
+                if (treeUri != null) {
+                    getContentResolver().takePersistableUriPermission(
+                            treeUri,
+                            Intent.FLAG_GRANT_READ_URI_PERMISSION
+                    );
+                    preferences.edit().putString(PREF_TREE_URI, treeUri.toString()).apply();
+                    startIndexing(treeUri);
+                }
+            });
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_library);
+
+        database = new LibraryDatabase(this);
+        preferences = getSharedPreferences(PREFERENCES_NAME, MODE_PRIVATE);
+        statusText = findViewById(R.id.tv_library_status);
+        progressBar = findViewById(R.id.progress_bar);
+        searchInput = findViewById(R.id.et_library_search);
+
+        Button btnPickFolder = findViewById(R.id.btn_pick_folder);
+        btnPickFolder.setOnClickListener(v -> folderPickerLauncher.launch(null));
+
+        setupResultsList();
+        searchInput.addTextChangedListener(new TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+            }
+
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) {
+            }
+
+            @Override
+            public void afterTextChanged(Editable s) {
+                runSearch(s.toString());
+            }
+        });
+
+        String savedTreeUri = preferences.getString(PREF_TREE_URI, null);
+        if (savedTreeUri != null) {
+            startIndexing(Uri.parse(savedTreeUri));
+        } else {
+            statusText.setText("Папка библиотеки не выбрана");
+        }
+        runSearch("");
+    }
+
+    private void setupResultsList() {
+        ListView resultsList = findViewById(R.id.lv_library_results);
+        resultsAdapter = new ArrayAdapter<LibraryDatabase.SearchResult>(this, 0, new ArrayList<>()) {
+            @Override
+            public View getView(int position, View convertView, ViewGroup parent) {
+                View itemView = convertView != null
+                        ? convertView
+                        : LayoutInflater.from(getContext()).inflate(
+                                android.R.layout.simple_list_item_2, parent, false);
+                LibraryDatabase.SearchResult result = getItem(position);
+                TextView titleView = itemView.findViewById(android.R.id.text1);
+                TextView detailsView = itemView.findViewById(android.R.id.text2);
+                titleView.setText(result.heading != null
+                        ? result.documentTitle + " › " + result.heading
+                        : result.documentTitle);
+                detailsView.setText(result.snippet);
+                return itemView;
+            }
+        };
+        resultsList.setAdapter(resultsAdapter);
+        resultsList.setOnItemClickListener((parent, view, position, id) ->
+                openResult(resultsAdapter.getItem(position)));
+    }
+
+    private void startIndexing(Uri treeUri) {
+        if (indexingTask != null) {
+            indexingTask.cancel(false);
+        }
+        indexingTask = new IndexingTask();
+        indexingTask.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR, treeUri);
+    }
+
+    private void runSearch(String query) {
+        if (searchTask != null) {
+            searchTask.cancel(false);
+        }
+        searchTask = new SearchTask();
+        searchTask.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR, query);
+    }
+
+    /**
+     * Файл не читается здесь целиком: просмотрщик отображает его в память и разбирает по окнам,
+     * а редактирование сам разрешает только для файлов до {@link DocumentViewModel#MAX_EDITABLE_FILE_BYTES}
+     */
+    private void openResult(LibraryDatabase.SearchResult result) {
+        Uri documentUri = Uri.parse(result.documentUri);
+        Intent intent = new Intent(this, DocumentViewerActivity.class);
+        intent.putExtra("document_uri", result.documentUri);
+        intent.putExtra("can_edit", true);
+        intent.putExtra("source_line", result.sourceLineIndex);
+        intent.putExtra("document_name", documentUri.getLastPathSegment());
+        startActivity(intent);
+    }
+
+    private class IndexingTask extends AsyncTask<Uri, Integer, LibraryIndexer.IndexingResult> {
+        @Override
+        protected void onPreExecute() {
+            progressBar.setVisibility(View.VISIBLE);
+            statusText.setText("Индексация...");
+        }
+
+        @Override
+        protected LibraryIndexer.IndexingResult doInBackground(Uri... treeUris) {
+            try {
+                LibraryIndexer indexer = new LibraryIndexer(getContentResolver(), database);
+                return indexer.indexTree(
+                        treeUris[0],
+                        (scannedFiles, indexedFiles) -> publishProgress(scannedFiles, indexedFiles),
+                        this::isCancelled);
+            } catch (Exception e) {
+                Log.e(TAG, "Ошибка индексации", e);
+                return null;
+            }
+        }
+
+        @Override
+        protected void onProgressUpdate(Integer... progress) {
+            statusText.setText("Индексация: найдено " + progress[0] + ", обновлено " + progress[1]);
+        }
+
+        @Override
+        protected void onPostExecute(LibraryIndexer.IndexingResult result) {
+            progressBar.setVisibility(View.GONE);
+            if (result == null) {
+                statusText.setText("Не удалось проиндексировать папку");
+                return;
+            }
+            statusText.setText("Документов: " + database.getDocumentCount()
+                    + " (обновлено " + result.indexedFiles + ", удалено " + result.removedFiles + ")");
+            runSearch(searchInput.getText().toString());
+        }
+    }
+
+    private class SearchTask extends AsyncTask<String, Void, List<LibraryDatabase.SearchResult>> {
+        @Override
+        protected List<LibraryDatabase.SearchResult> doInBackground(String... queries) {
+            try {
+                return database.search(queries[0]);
+            } catch (Exception e) {
+                Log.e(TAG, "Ошибка поиска", e);
+                return new ArrayList<>();
+            }
+        }
+
+        @Override
+        protected void onPostExecute(List<LibraryDatabase.SearchResult> results) {
+            if (isCancelled()) {
+                return;
+            }
+            resultsAdapter.clear();
+            resultsAdapter.addAll(results);
+        }
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        if (indexingTask != null) {
+            indexingTask.cancel(false);
+        }
+        if (searchTask != null) {
+            searchTask.cancel(false);
+        }
+        database.close();
+    }
+}
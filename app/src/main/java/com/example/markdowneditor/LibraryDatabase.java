@@ -0,0 +1,233 @@
+package com.example.markdowneditor;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Локальная база библиотеки Markdown-файлов: документы, их секции с заголовками
+ * и полнотекстовый индекс FTS4 по секциям
+ */
+public class LibraryDatabase extends SQLiteOpenHelper {
+    private static final String DATABASE_NAME = "library.db";
+    private static final int DATABASE_VERSION = 2;
+    private static final int SEARCH_RESULT_LIMIT = 200;
+
+    /**
+     * Найденная секция документа библиотеки
+     */
+    public static final class SearchResult {
+        public final String documentUri;
+        public final String documentTitle;
+        public final String heading;
+        /**
+         * Номер строки исходного текста, с которой начинается секция
+         */
+        public final int sourceLineIndex;
+        public final String snippet;
+
+        SearchResult(String documentUri, String documentTitle, String heading, int sourceLineIndex, String snippet) {
+            this.documentUri = documentUri;
+            this.documentTitle = documentTitle;
+            this.heading = heading;
+            this.sourceLineIndex = sourceLineIndex;
+            this.snippet = snippet;
+        }
+    }
+
+    public LibraryDatabase(Context context) {
+        super(context.getApplicationContext(), DATABASE_NAME, null, DATABASE_VERSION);
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE documents ("
+                + "_id INTEGER PRIMARY KEY AUTOINCREMENT, "
+                + "document_uri TEXT NOT NULL UNIQUE, "
+                + "display_name TEXT, "
+                + "title TEXT, "
+                + "last_modified INTEGER NOT NULL)");
+        db.execSQL("CREATE TABLE sections ("
+                + "_id INTEGER PRIMARY KEY AUTOINCREMENT, "
+                + "document_id INTEGER NOT NULL REFERENCES documents(_id), "
+                + "heading_level INTEGER NOT NULL, "
+                + "heading TEXT, "
+                + "source_line INTEGER NOT NULL)");
+        db.execSQL("CREATE INDEX sections_document_id ON sections(document_id)");
+        db.execSQL("CREATE VIRTUAL TABLE section_fts USING fts4(heading, body, tokenize=unicode61)");
+    }
+
+    /**
+     * Индекс целиком пересоздаётся и заполняется при следующей индексации.
+     * Версия 2: секции хранят номер строки вместо смещения в символах.
+     */
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        db.execSQL("DROP TABLE IF EXISTS section_fts");
+        db.execSQL("DROP TABLE IF EXISTS sections");
+        db.execSQL("DROP TABLE IF EXISTS documents");
+        onCreate(db);
+    }
+
+    /**
+     * Возвращает время последнего изменения для всех проиндексированных документов
+     */
+    public Map<String, Long> loadIndexedModificationTimes() {
+        Map<String, Long> modificationTimes = new HashMap<>();
+        try (Cursor cursor = getReadableDatabase().rawQuery(
+                "SELECT document_uri, last_modified FROM documents", null)) {
+            while (cursor.moveToNext()) {
+                modificationTimes.put(cursor.getString(0), cursor.getLong(1));
+            }
+        }
+        return modificationTimes;
+    }
+
+    /**
+     * Заменяет содержимое индекса для документа одной транзакцией
+     */
+    public void replaceDocument(String documentUri, String displayName, long lastModified,
+                                MarkdownDocument document) {
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try {
+            deleteDocumentRows(db, documentUri);
+
+            DocumentOutline outline = document.getOutline();
+            List<DocumentOutline.Heading> headings = outline.getHeadings();
+            ContentValues documentValues = new ContentValues();
+            documentValues.put("document_uri", documentUri);
+            documentValues.put("display_name", displayName);
+            documentValues.put("title", headings.isEmpty() ? displayName : headings.get(0).title);
+            documentValues.put("last_modified", lastModified);
+            long documentId = db.insertOrThrow("documents", null, documentValues);
+
+            List<MarkdownBlock> blocks = document.getBlocks();
+            int headingIndex = 0;
+            for (int sectionIndex = 0; sectionIndex < outline.getSectionCount(); sectionIndex++) {
+                int startBlock = outline.getSectionStartBlock(sectionIndex);
+                int endBlock = outline.getSectionEndBlock(sectionIndex);
+                DocumentOutline.Heading heading = null;
+                if (headingIndex < headings.size() && headings.get(headingIndex).sectionIndex == sectionIndex) {
+                    heading = headings.get(headingIndex++);
+                }
+
+                StringBuilder sectionBody = new StringBuilder();
+                for (int blockIndex = heading != null ? startBlock + 1 : startBlock;
+                     blockIndex < endBlock;
+                     blockIndex++) {
+                    sectionBody.append(blocks.get(blockIndex).getPlainText()).append('\n');
+                }
+
+                ContentValues sectionValues = new ContentValues();
+                sectionValues.put("document_id", documentId);
+                sectionValues.put("heading_level", heading != null ? heading.level : 0);
+                sectionValues.put("heading", heading != null ? heading.title : null);
+                sectionValues.put("source_line", startBlock < blocks.size()
+                        ? blocks.get(startBlock).getSourceLineIndex()
+                        : 0);
+                long sectionId = db.insertOrThrow("sections", null, sectionValues);
+
+                ContentValues ftsValues = new ContentValues();
+                ftsValues.put("docid", sectionId);
+                ftsValues.put("heading", heading != null ? heading.title : "");
+                ftsValues.put("body", sectionBody.toString());
+                db.insertOrThrow("section_fts", null, ftsValues);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    public void deleteDocument(String documentUri) {
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try {
+            deleteDocumentRows(db, documentUri);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    public int getDocumentCount() {
+        try (Cursor cursor = getReadableDatabase().rawQuery("SELECT COUNT(*) FROM documents", null)) {
+            return cursor.moveToFirst() ? cursor.getInt(0) : 0;
+        }
+    }
+
+    /**
+     * Ищет секции по префиксам слов запроса. Пустой запрос возвращает список документов.
+     */
+    public List<SearchResult> search(String query) {
+        String matchExpression = buildMatchExpression(query);
+        String sql;
+        String[] arguments;
+        if (matchExpression.isEmpty()) {
+            sql = "SELECT d.document_uri, d.title, NULL, 0, d.display_name "
+                    + "FROM documents d ORDER BY d.title COLLATE NOCASE LIMIT " + SEARCH_RESULT_LIMIT;
+            arguments = null;
+        } else {
+            sql = "SELECT d.document_uri, d.title, s.heading, s.source_line, "
+                    + "snippet(section_fts, '[', ']', '…', -1, 12) "
+                    + "FROM section_fts "
+                    + "JOIN sections s ON s._id = section_fts.docid "
+                    + "JOIN documents d ON d._id = s.document_id "
+                    + "WHERE section_fts MATCH ? "
+                    + "ORDER BY d.title COLLATE NOCASE, s.source_line "
+                    + "LIMIT " + SEARCH_RESULT_LIMIT;
+            arguments = new String[]{matchExpression};
+        }
+
+        List<SearchResult> results = new ArrayList<>();
+        try (Cursor cursor = getReadableDatabase().rawQuery(sql, arguments)) {
+            while (cursor.moveToNext()) {
+                results.add(new SearchResult(
+                        cursor.getString(0),
+                        cursor.getString(1),
+                        cursor.getString(2),
+                        cursor.getInt(3),
+                        cursor.getString(4)));
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Превращает пользовательский ввод в выражение FTS: каждое слово ищется как префикс
+     */
+    static String buildMatchExpression(String query) {
+        StringBuilder matchExpression = new StringBuilder();
+        int tokenStart = -1;
+        for (int position = 0; position <= query.length(); position++) {
+            boolean isTokenChar = position < query.length() && Character.isLetterOrDigit(query.charAt(position));
+            if (isTokenChar && tokenStart == -1) {
+                tokenStart = position;
+            } else if (!isTokenChar && tokenStart != -1) {
+                if (matchExpression.length() > 0) {
+                    matchExpression.append(' ');
+                }
+                matchExpression.append(query, tokenStart, position).append('*');
+                tokenStart = -1;
+            }
+        }
+        return matchExpression.toString();
+    }
+
+    private static void deleteDocumentRows(SQLiteDatabase db, String documentUri) {
+        String[] documentArguments = new String[]{documentUri};
+        db.execSQL("DELETE FROM section_fts WHERE docid IN (SELECT s._id FROM sections s "
+                + "JOIN documents d ON d._id = s.document_id WHERE d.document_uri = ?)", documentArguments);
+        db.execSQL("DELETE FROM sections WHERE document_id IN "
+                + "(SELECT _id FROM documents WHERE document_uri = ?)", documentArguments);
+        db.execSQL("DELETE FROM documents WHERE document_uri = ?", documentArguments);
+    }
+}
@@ -0,0 +1,172 @@
+package com.example.markdowneditor;
+
+import android.content.ContentResolver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.provider.DocumentsContract;
+import android.util.Log;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Обходит выбранную папку (tree URI) и обновляет индекс библиотеки.
+ * Повторно разбираются только файлы, у которых изменилось время последнего изменения;
+ * записи об удалённых файлах удаляются из индекса.
+ * <p>
+ * Если содержимое какой-то папки прочитать не удалось, записи не удаляются: идентификаторы
+ * документов непрозрачны, и по ним нельзя понять, какие файлы лежали в этой папке.
+ */
+public class LibraryIndexer {
+    private static final String LOG_TAG = "LibraryIndexer";
+    private static final String[] CHILD_PROJECTION = new String[]{
+            DocumentsContract.Document.COLUMN_DOCUMENT_ID,
+            DocumentsContract.Document.COLUMN_DISPLAY_NAME,
+            DocumentsContract.Document.COLUMN_MIME_TYPE,
+            DocumentsContract.Document.COLUMN_LAST_MODIFIED
+    };
+
+    /**
+     * Промежуточный прогресс индексации
+     */
+    public interface ProgressListener {
+        void onProgress(int scannedFiles, int indexedFiles);
+    }
+
+    /**
+     * Флаг отмены, который проверяется между файлами
+     */
+    public interface CancellationSignal {
+        boolean isCancelled();
+    }
+
+    /**
+     * Итог индексации
+     */
+    public static final class IndexingResult {
+        public final int scannedFiles;
+        public final int indexedFiles;
+        public final int removedFiles;
+
+        IndexingResult(int scannedFiles, int indexedFiles, int removedFiles) {
+            this.scannedFiles = scannedFiles;
+            this.indexedFiles = indexedFiles;
+            this.removedFiles = removedFiles;
+        }
+    }
+
+    private final ContentResolver contentResolver;
+    private final LibraryDatabase database;
+
+    public LibraryIndexer(ContentResolver contentResolver, LibraryDatabase database) {
+        this.contentResolver = contentResolver;
+        this.database = database;
+    }
+
+    public IndexingResult indexTree(Uri treeUri, ProgressListener progressListener, CancellationSignal cancellation) {
+        Map<String, Long> indexedModificationTimes = database.loadIndexedModificationTimes();
+        Set<String> seenDocumentUris = new HashSet<>();
+        Deque<String> pendingDirectoryIds = new ArrayDeque<>();
+        pendingDirectoryIds.add(DocumentsContract.getTreeDocumentId(treeUri));
+        int scannedFiles = 0;
+        int indexedFiles = 0;
+        boolean hasUnlistedDirectories = false;
+
+        while (!pendingDirectoryIds.isEmpty() && !cancellation.isCancelled()) {
+            Uri childrenUri = DocumentsContract.buildChildDocumentsUriUsingTree(
+                    treeUri, pendingDirectoryIds.poll());
+            try (Cursor cursor = contentResolver.query(childrenUri, CHILD_PROJECTION, null, null, null)) {
+                if (cursor == null) {
+                    Log.e(LOG_TAG, "Не удалось получить содержимое папки " + childrenUri);
+                    hasUnlistedDirectories = true;
+                    continue;
+                }
+                while (cursor.moveToNext() && !cancellation.isCancelled()) {
+                    String documentId = cursor.getString(0);
+                    String displayName = cursor.getString(1);
+                    String mimeType = cursor.getString(2);
+                    long lastModified = cursor.isNull(3) ? 0 : cursor.getLong(3);
+
+                    if (DocumentsContract.Document.MIME_TYPE_DIR.equals(mimeType)) {
+                        pendingDirectoryIds.add(documentId);
+                        continue;
+                    }
+                    if (!isMarkdownFileName(displayName)) {
+                        continue;
+                    }
+
+                    String documentUri = DocumentsContract.buildDocumentUriUsingTree(treeUri, documentId).toString();
+                    seenDocumentUris.add(documentUri);
+                    scannedFiles++;
+
+                    Long indexedModificationTime = indexedModificationTimes.get(documentUri);
+                    if (indexedModificationTime == null || indexedModificationTime != lastModified) {
+                        if (indexDocument(documentUri, displayName, lastModified)) {
+                            indexedFiles++;
+                        }
+                    }
+                    progressListener.onProgress(scannedFiles, indexedFiles);
+                }
+            } catch (Exception exception) {
+                Log.e(LOG_TAG, "Ошибка обхода папки " + childrenUri, exception);
+                hasUnlistedDirectories = true;
+            }
+        }
+
+        int removedFiles = 0;
+        if (!cancellation.isCancelled() && !hasUnlistedDirectories) {
+            for (String documentUri : indexedModificationTimes.keySet()) {
+                if (!seenDocumentUris.contains(documentUri)) {
+                    database.deleteDocument(documentUri);
+                    removedFiles++;
+                }
+            }
+        }
+        return new IndexingResult(scannedFiles, indexedFiles, removedFiles);
+    }
+
+    private boolean indexDocument(String documentUri, String displayName, long lastModified) {
+        try {
+            String markdownContent = readDocument(contentResolver, Uri.parse(documentUri));
+            database.replaceDocument(documentUri, displayName, lastModified,
+                    MarkdownDocument.parse(markdownContent));
+            return true;
+        } catch (Exception exception) {
+            Log.e(LOG_TAG, "Ошибка индексации " + documentUri, exception);
+            return false;
+        }
+    }
+
+    static boolean isMarkdownFileName(String fileName) {
+        return fileName != null && fileName.toLowerCase(Locale.ROOT).matches(".*\\.(md|markdown)$");
+    }
+
+    /**
+     * Читает документ как UTF-8 и заменяет "\r\n" на "\n", как {@link MappedMarkdownFile}, чтобы номера
+     * строк секций в индексе совпадали с номерами строк при открытии файла через отображение в память
+     */
+    static String readDocument(ContentResolver contentResolver, Uri documentUri) throws IOException {
+        InputStream inputStream = contentResolver.openInputStream(documentUri);
+        if (inputStream == null) {
+            throw new IOException("Не удалось открыть " + documentUri);
+        }
+        try (InputStream documentStream = inputStream) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            byte[] buffer = new byte[64 * 1024];
+            int readCount;
+            while ((readCount = documentStream.read(buffer)) != -1) {
+                bytes.write(buffer, 0, readCount);
+            }
+            String content = new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+            return content.indexOf('\r') >= 0 ? content.replace("\r\n", "\n") : content;
+        }
+    }
+}
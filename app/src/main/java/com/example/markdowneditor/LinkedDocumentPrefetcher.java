@@ -0,0 +1,121 @@
+package com.example.markdowneditor;
+
+import android.content.res.Resources;
+import android.os.Process;
+import android.util.Log;
+import android.util.LruCache;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Фоновая предзагрузка Markdown-документов, на которые ссылается открытый документ.
+ * Скачанные и уже разобранные документы хранятся в ограниченном LRU-кэше, общем для всех
+ * экранов просмотра, поэтому переход по ссылке внутри набора документов открывается сразу.
+ */
+public final class LinkedDocumentPrefetcher {
+    private static final String LOG_TAG = "LinkedDocPrefetcher";
+    private static final int CACHE_SIZE_KB = 4 * 1024;
+    private static final int MAX_PENDING_PREFETCHES = 4;
+    /**
+     * Документ больше этого не предзагружается: он занял бы четверть кэша, а скачивать его
+     * заранее ради ссылки, по которой могут и не перейти, слишком дорого
+     */
+    private static final long MAX_PREFETCH_BYTES = CACHE_SIZE_KB * 1024L / 4;
+
+    private static LinkedDocumentPrefetcher instance;
+
+    /**
+     * Исходный текст документа вместе с результатом его разбора
+     */
+    public static final class PrefetchedDocument {
+        public final String content;
+        public final MarkdownDocument document;
+
+        PrefetchedDocument(String content, MarkdownDocument document) {
+            this.content = content;
+            this.document = document;
+        }
+    }
+
+    private final LruCache<String, PrefetchedDocument> documentCache =
+            new LruCache<String, PrefetchedDocument>(CACHE_SIZE_KB) {
+                @Override
+                protected int sizeOf(String documentUrl, PrefetchedDocument prefetchedDocument) {
+                    // Разобранные блоки и индекс занимают примерно столько же, сколько исходный текст
+                    return prefetchedDocument.content.length() * 2 * 2 / 1024 + 1;
+                }
+            };
+    private final Set<String> pendingUrls = new HashSet<>();
+    private final ExecutorService prefetchExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread prefetchThread = new Thread(() -> {
+            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+            runnable.run();
+        }, "md-prefetch");
+        prefetchThread.setDaemon(true);
+        return prefetchThread;
+    });
+
+    private LinkedDocumentPrefetcher() {
+    }
+
+    public static synchronized LinkedDocumentPrefetcher getInstance() {
+        if (instance == null) {
+            instance = new LinkedDocumentPrefetcher();
+        }
+        return instance;
+    }
+
+    /**
+     * Ставит документ в очередь на загрузку, если его ещё нет в кэше и очередь не переполнена
+     */
+    public void prefetch(String documentUrl) {
+        String cacheKey = toCacheKey(documentUrl);
+        synchronized (pendingUrls) {
+            if (documentCache.get(cacheKey) != null
+                    || pendingUrls.contains(cacheKey)
+                    || pendingUrls.size() >= MAX_PENDING_PREFETCHES) {
+                return;
+            }
+            pendingUrls.add(cacheKey);
+        }
+
+        prefetchExecutor.execute(() -> {
+            try {
+                String content = MarkdownDownloader.download(cacheKey, MAX_PREFETCH_BYTES);
+                MarkdownDocument document = MarkdownDocument.parse(content);
+                // Как и при обычном открытии, оценки высоты блоков готовятся в фоне
+                document.setEstimatedBlockHeights(SectionedDocumentRenderer.estimateBlockHeights(
+                        document.getBlocks(), Resources.getSystem().getDisplayMetrics()));
+                put(cacheKey, content, document);
+            } catch (Exception exception) {
+                Log.w(LOG_TAG, "Не удалось предзагрузить " + cacheKey + ": " + exception.getMessage());
+            } finally {
+                synchronized (pendingUrls) {
+                    pendingUrls.remove(cacheKey);
+                }
+            }
+        });
+    }
+
+    /**
+     * Документ из кэша или null, если он ещё не был загружен
+     */
+    public PrefetchedDocument get(String documentUrl) {
+        return documentCache.get(toCacheKey(documentUrl));
+    }
+
+    /**
+     * Кладёт в кэш документ, загруженный при обычном открытии, чтобы возврат к нему тоже был мгновенным
+     */
+    public void put(String documentUrl, String content, MarkdownDocument document) {
+        documentCache.put(toCacheKey(documentUrl), new PrefetchedDocument(content, document));
+    }
+
+    private static String toCacheKey(String documentUrl) {
+        int fragmentStart = documentUrl.indexOf('#');
+        return fragmentStart >= 0 ? documentUrl.substring(0, fragmentStart) : documentUrl;
+    }
+}
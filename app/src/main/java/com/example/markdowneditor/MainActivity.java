@@ -18,11 +18,6 @@ import androidx.core.graphics.Insets;
 import androidx.core.view.ViewCompat;
 import androidx.core.view.WindowInsetsCompat;
 
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
-import java.net.HttpURLConnection;
-import java.net.URL;
-
 public class MainActivity extends AppCompatActivity {
     private static final int FILE_PICKER_REQUEST = 1;
     private static final int EDIT_REQUEST_CODE = 2;
@@ -30,7 +25,7 @@ public class MainActivity extends AppCompatActivity {
 
     private EditText urlInput;
     private ProgressBar progressBar;
-    private Button btnLoadFile, btnLoadUrl;
+    private Button btnLoadFile, btnLoadUrl, btnOpenLibrary;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -50,6 +45,7 @@ public class MainActivity extends AppCompatActivity {
         progressBar = findViewById(R.id.progress_bar);
         btnLoadFile = findViewById(R.id.btn_load_file);
         btnLoadUrl = findViewById(R.id.btn_load_url);
+        btnOpenLibrary = findViewById(R.id.btn_open_library);
 
         btnLoadFile.setOnClickListener(v -> {
             Intent intent = new Intent(Intent.ACTION_OPEN_DOCUMENT);
@@ -66,6 +62,8 @@ public class MainActivity extends AppCompatActivity {
                 urlInput.setError("Некорректный URL");
             }
         });
+
+        btnOpenLibrary.setOnClickListener(v -> startActivity(new Intent(this, LibraryActivity.class)));
     }
 
     private class DownloadTask extends AsyncTask<String, Void, DownloadResult> {
@@ -76,51 +74,23 @@ public class MainActivity extends AppCompatActivity {
 
         @Override
         protected DownloadResult doInBackground(String... urls) {
-            HttpURLConnection connection = null;
+            long readStart = System.nanoTime();
             try {
-                String url = convertGoogleDriveUrl(urls[0]);
-                connection = (HttpURLConnection) new URL(url).openConnection();
-                connection.setRequestProperty("User-Agent", "Mozilla/5.0");
-                connection.setConnectTimeout(15000);
-                connection.connect();
-
-                // Проверяем Content-Type
-                String contentType = connection.getContentType();
-                if (contentType == null || !contentType.startsWith("text/")) {
-                    return new DownloadResult(null, "Файл не является текстовым (Content-Type: " + contentType + ")");
-                }
-
-                try (BufferedReader reader = new BufferedReader(
-                        new InputStreamReader(connection.getInputStream()))) {
-                    StringBuilder result = new StringBuilder();
-                    String line;
-                    while ((line = reader.readLine()) != null) {
-                        result.append(line).append("\n");
-                    }
-                    return new DownloadResult(result.toString(), null);
-                }
+                DownloadResult downloadResult = new DownloadResult(MarkdownDownloader.download(urls[0]), null);
+                downloadResult.documentName = urls[0];
+                downloadResult.readDurationNanos = System.nanoTime() - readStart;
+                return downloadResult;
             } catch (Exception e) {
                 Log.e(TAG, "Ошибка загрузки", e);
                 return new DownloadResult(null, "Ошибка загрузки: " + e.getMessage());
-            } finally {
-                if (connection != null) {
-                    connection.disconnect();
-                }
             }
         }
 
-        private String convertGoogleDriveUrl(String originalUrl) {
-            return originalUrl.replace(
-                    "https://drive.google.com/file/d/",
-                    "https://drive.google.com/uc?export=download&id="
-            ).split("/view")[0];
-        }
-
         @Override
         protected void onPostExecute(DownloadResult result) {
             progressBar.setVisibility(View.GONE);
             if (result.content != null) {
-                openViewerActivity(result.content, true);
+                openViewerActivity(result.content, true, result.documentName, result.readDurationNanos);
             } else {
                 Toast.makeText(MainActivity.this,
                         result.errorMessage != null ? result.errorMessage : "Неизвестная ошибка",
@@ -132,6 +102,8 @@ public class MainActivity extends AppCompatActivity {
     private static class DownloadResult {
         String content;
         String errorMessage;
+        String documentName;
+        long readDurationNanos;
 
         DownloadResult(String content, String errorMessage) {
             this.content = content;
@@ -140,9 +112,18 @@ public class MainActivity extends AppCompatActivity {
     }
 
     private void openViewerActivity(String content, boolean canEdit) {
+        openViewerActivity(content, canEdit, null, 0);
+    }
+
+    private void openViewerActivity(String content, boolean canEdit, String documentName, long readDurationNanos) {
         Intent intent = new Intent(this, DocumentViewerActivity.class);
         intent.putExtra("content", content);
+        if (documentName != null && URLUtil.isNetworkUrl(documentName)) {
+            intent.putExtra("base_url", documentName);
+        }
         intent.putExtra("can_edit", canEdit);
+        intent.putExtra("document_name", documentName);
+        intent.putExtra("read_duration_ns", readDurationNanos);
         startActivityForResult(intent, EDIT_REQUEST_CODE);
     }
 
@@ -157,17 +138,12 @@ public class MainActivity extends AppCompatActivity {
                     Intent.FLAG_GRANT_READ_URI_PERMISSION
             );
 
-            try (BufferedReader reader = new BufferedReader(
-                    new InputStreamReader(getContentResolver().openInputStream(uri)))) {
-                StringBuilder content = new StringBuilder();
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    content.append(line).append("\n");
-                }
-                openViewerActivity(content.toString(), true);
-            } catch (Exception e) {
-                Toast.makeText(this, "Ошибка чтения файла: " + e.getMessage(), Toast.LENGTH_LONG).show();
-            }
+            // Файл не читается здесь целиком: просмотрщик отображает его в память и разбирает по окнам
+            Intent intent = new Intent(this, DocumentViewerActivity.class);
+            intent.putExtra("document_uri", uri.toString());
+            intent.putExtra("can_edit", true);
+            intent.putExtra("document_name", uri.getLastPathSegment());
+            startActivityForResult(intent, EDIT_REQUEST_CODE);
         }
         else if (requestCode == EDIT_REQUEST_CODE && resultCode == RESULT_OK && data != null) {
             String editedContent = data.getStringExtra("content");
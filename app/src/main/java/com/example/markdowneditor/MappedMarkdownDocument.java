@@ -0,0 +1,196 @@
+package com.example.markdowneditor;
+
+import android.os.AsyncTask;
+import android.util.LruCache;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Документ поверх {@link MappedMarkdownFile}: блоки окна разбираются при первом обращении
+ * и хранятся в небольшом LRU-кэше окон. После открытия в памяти остаются только индекс строк,
+ * номера первых блоков окон и заголовки для оглавления, так что расход памяти определяется
+ * отображаемой частью документа, а не размером файла.
+ * <p>
+ * Полного поискового индекса у такого документа нет, поиск просматривает окна по очереди
+ * и должен выполняться вне главного потока.
+ * <p>
+ * Главный поток не должен разбирать окна сам: перед обращением к блоку он вызывает
+ * {@link #prepareBlock}, который при промахе кэша разбирает окно и следующее за ним в фоне.
+ */
+public class MappedMarkdownDocument extends MarkdownDocument implements Closeable {
+    private static final int CACHED_WINDOW_COUNT = 8;
+    static final int MAX_SEARCH_MATCHES = 1000;
+
+    private final MappedMarkdownFile file;
+    private final WindowedBlockList windowedBlocks;
+
+    private MappedMarkdownDocument(MappedMarkdownFile file, WindowedBlockList windowedBlocks,
+                                   DocumentOutline outline) {
+        super(windowedBlocks, null, outline);
+        this.file = file;
+        this.windowedBlocks = windowedBlocks;
+    }
+
+    /**
+     * Собирает документ по числу блоков окон и заголовкам, подсчитанным при построении
+     * индекса строк; сами окна при этом не разбираются
+     */
+    public static MappedMarkdownDocument build(MappedMarkdownFile file) {
+        int[] windowFirstBlocks = new int[file.getWindowCount() + 1];
+        for (int windowIndex = 0; windowIndex <= file.getWindowCount(); windowIndex++) {
+            windowFirstBlocks[windowIndex] = file.getWindowFirstBlock(windowIndex);
+        }
+        DocumentOutline outline = new DocumentOutline(file.getHeadingBlocks(),
+                file.getHeadingBlockIndices(), file.getBlockCount());
+        return new MappedMarkdownDocument(file, new WindowedBlockList(file, windowFirstBlocks), outline);
+    }
+
+    public MappedMarkdownFile getFile() {
+        return file;
+    }
+
+    /**
+     * Оценка номера строки исходного текста, с которой начинается блок, по среднему числу строк
+     * на блок в его окне, без разбора самого окна. Для blockIndex, равного числу блоков, — число строк файла.
+     */
+    public double estimateSourceLineIndex(int blockIndex) {
+        if (blockIndex >= windowedBlocks.size()) {
+            return file.getLineCount();
+        }
+        int windowIndex = windowedBlocks.findWindowForBlock(blockIndex);
+        int windowFirstBlock = windowedBlocks.getWindowFirstBlock(windowIndex);
+        int windowBlockCount = windowedBlocks.getWindowEndBlock(windowIndex) - windowFirstBlock;
+        int windowLineCount = file.getWindowEndLine(windowIndex) - file.getWindowStartLine(windowIndex);
+        return file.getWindowStartLine(windowIndex)
+                + (blockIndex - windowFirstBlock) * (double) windowLineCount / Math.max(1, windowBlockCount);
+    }
+
+    @Override
+    boolean prepareBlock(int blockIndex) {
+        int windowIndex = windowedBlocks.findWindowForBlock(blockIndex);
+        boolean isWindowParsed = windowedBlocks.prepareWindow(windowIndex);
+        if (windowIndex + 1 < file.getWindowCount()) {
+            windowedBlocks.prepareWindow(windowIndex + 1);
+        }
+        return isWindowParsed;
+    }
+
+    /**
+     * Ищет запрос так же, как {@link DocumentSearchIndex#search}, просматривая окна по очереди.
+     * Возвращает не больше {@link #MAX_SEARCH_MATCHES} совпадений.
+     */
+    public List<DocumentSearchIndex.Match> search(String query, LibraryIndexer.CancellationSignal cancellation) {
+        List<DocumentSearchIndex.Match> foundMatches = new ArrayList<>();
+        Map<Integer, List<MarkdownBlock>> cachedWindows = windowedBlocks.windowCache.snapshot();
+        for (int windowIndex = 0; windowIndex < file.getWindowCount(); windowIndex++) {
+            if (cancellation.isCancelled()) {
+                break;
+            }
+            int windowFirstBlock = windowedBlocks.getWindowFirstBlock(windowIndex);
+            List<MarkdownBlock> windowBlocks = cachedWindows.get(windowIndex);
+            if (windowBlocks == null) {
+                windowBlocks = file.parseWindow(windowIndex);
+            }
+            for (DocumentSearchIndex.Match match : new DocumentSearchIndex(windowBlocks).search(query)) {
+                foundMatches.add(new DocumentSearchIndex.Match(
+                        windowFirstBlock + match.blockIndex, match.start, match.end));
+                if (foundMatches.size() >= MAX_SEARCH_MATCHES) {
+                    return foundMatches;
+                }
+            }
+        }
+        return foundMatches;
+    }
+
+    @Override
+    public void close() throws IOException {
+        windowedBlocks.windowCache.evictAll();
+        file.close();
+    }
+
+    /**
+     * Список всех блоков документа, который разбирает окна по мере обращения к ним
+     */
+    private static final class WindowedBlockList extends AbstractList<MarkdownBlock> implements RandomAccess {
+        private final MappedMarkdownFile file;
+        private final int[] windowFirstBlocks;
+        private final LruCache<Integer, List<MarkdownBlock>> windowCache = new LruCache<>(CACHED_WINDOW_COUNT);
+        private final Set<Integer> windowsBeingParsed = ConcurrentHashMap.newKeySet();
+
+        WindowedBlockList(MappedMarkdownFile file, int[] windowFirstBlocks) {
+            this.file = file;
+            this.windowFirstBlocks = windowFirstBlocks;
+        }
+
+        @Override
+        public MarkdownBlock get(int blockIndex) {
+            if (blockIndex < 0 || blockIndex >= size()) {
+                throw new IndexOutOfBoundsException("Block " + blockIndex + " of " + size());
+            }
+            int windowIndex = findWindowForBlock(blockIndex);
+            List<MarkdownBlock> windowBlocks = windowCache.get(windowIndex);
+            if (windowBlocks == null) {
+                windowBlocks = file.parseWindow(windowIndex);
+                windowCache.put(windowIndex, windowBlocks);
+            }
+            return windowBlocks.get(blockIndex - windowFirstBlocks[windowIndex]);
+        }
+
+        @Override
+        public int size() {
+            return windowFirstBlocks[windowFirstBlocks.length - 1];
+        }
+
+        /**
+         * Возвращает true, если окно уже в кэше; иначе начинает разбирать его в фоне, если это ещё не начато
+         */
+        boolean prepareWindow(int windowIndex) {
+            if (windowCache.get(windowIndex) != null) {
+                return true;
+            }
+            if (windowsBeingParsed.add(windowIndex)) {
+                AsyncTask.THREAD_POOL_EXECUTOR.execute(() -> {
+                    try {
+                        windowCache.put(windowIndex, file.parseWindow(windowIndex));
+                    } finally {
+                        windowsBeingParsed.remove(windowIndex);
+                    }
+                });
+            }
+            return false;
+        }
+
+        int getWindowFirstBlock(int windowIndex) {
+            return windowFirstBlocks[windowIndex];
+        }
+
+        int getWindowEndBlock(int windowIndex) {
+            return windowFirstBlocks[windowIndex + 1];
+        }
+
+        /**
+         * Последнее окно, начинающееся не позже блока; пустые окна пропускаются
+         */
+        int findWindowForBlock(int blockIndex) {
+            int low = 0;
+            int high = windowFirstBlocks.length - 2;
+            while (low < high) {
+                int middle = (low + high + 1) >>> 1;
+                if (windowFirstBlocks[middle] <= blockIndex) {
+                    low = middle;
+                } else {
+                    high = middle - 1;
+                }
+            }
+            return low;
+        }
+    }
+}
@@ -0,0 +1,331 @@
+package com.example.markdowneditor;
+
+import android.content.ContentResolver;
+import android.net.Uri;
+import android.os.ParcelFileDescriptor;
+
+import java.io.Closeable;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Локальный Markdown-файл, отображённый в память через {@link FileChannel}.
+ * При открытии файл просматривается один раз, чтобы построить компактный индекс начал строк
+ * и разбить его на окна; текст окна декодируется только тогда, когда окно нужно показать
+ * или просмотреть при поиске, поэтому в куче никогда не лежит весь файл.
+ * <p>
+ * Окна по возможности заканчиваются на пустой строке вне блока кода, чтобы каждое окно
+ * разбиралось независимо. Если такой строки долго нет, окно обрезается принудительно,
+ * и для следующего окна запоминается, начинается ли оно внутри блока кода.
+ * <p>
+ * В том же проходе считается число блоков каждого окна и собираются заголовки для оглавления,
+ * так что для открытия документа ни одно окно не разбирается (см. {@link #countLineBlocks}).
+ */
+public class MappedMarkdownFile implements Closeable {
+    static final int TARGET_WINDOW_BYTES = 32 * 1024;
+    static final int MAX_WINDOW_BYTES = 4 * TARGET_WINDOW_BYTES;
+
+    private final ParcelFileDescriptor fileDescriptor;
+    private final ByteBuffer mappedContent;
+    private int[] lineStartOffsets = new int[1024];
+    private int lineCount;
+    private int[] windowStartLines = new int[64];
+    private int windowCount;
+    private final BitSet windowsStartingInsideCodeBlock = new BitSet();
+    private int[] windowFirstBlocks = new int[64];
+    private int blockCount;
+    private final List<MarkdownBlock> headingBlocks = new ArrayList<>();
+    private int[] headingBlockIndices = new int[16];
+    // Состояние разбора текущего окна, нужное для подсчёта блоков
+    private boolean isInsideTable;
+    private boolean isCodeBlockEmpty;
+
+    MappedMarkdownFile(ByteBuffer mappedContent, ParcelFileDescriptor fileDescriptor) {
+        this.mappedContent = mappedContent;
+        this.fileDescriptor = fileDescriptor;
+        buildLineIndex();
+    }
+
+    /**
+     * Отображает файл в память только для чтения и строит индекс строк
+     */
+    public static MappedMarkdownFile open(ContentResolver contentResolver, Uri fileUri) throws IOException {
+        ParcelFileDescriptor fileDescriptor = contentResolver.openFileDescriptor(fileUri, "r");
+        if (fileDescriptor == null) {
+            throw new IOException("Не удалось открыть " + fileUri);
+        }
+        try (FileInputStream inputStream = new FileInputStream(fileDescriptor.getFileDescriptor())) {
+            FileChannel fileChannel = inputStream.getChannel();
+            long fileSize = fileChannel.size();
+            if (fileSize > Integer.MAX_VALUE) {
+                throw new IOException("Файл слишком большой: " + fileSize + " байт");
+            }
+            // Отображение остаётся действительным и после закрытия канала
+            ByteBuffer mappedContent = fileChannel.map(FileChannel.MapMode.READ_ONLY, 0, fileSize);
+            return new MappedMarkdownFile(mappedContent, fileDescriptor);
+        } catch (IOException | RuntimeException exception) {
+            fileDescriptor.close();
+            throw exception;
+        }
+    }
+
+    public int getSizeBytes() {
+        return mappedContent.limit();
+    }
+
+    public int getLineCount() {
+        return lineCount;
+    }
+
+    public int getWindowCount() {
+        return windowCount;
+    }
+
+    public int getWindowStartLine(int windowIndex) {
+        return windowStartLines[windowIndex];
+    }
+
+    /**
+     * Номер строки, следующей за последней строкой окна
+     */
+    public int getWindowEndLine(int windowIndex) {
+        return windowIndex + 1 < windowCount ? windowStartLines[windowIndex + 1] : lineCount;
+    }
+
+    /**
+     * Номер первого блока окна; для windowIndex, равного числу окон, — число блоков в файле
+     */
+    public int getWindowFirstBlock(int windowIndex) {
+        return windowIndex < windowCount ? windowFirstBlocks[windowIndex] : blockCount;
+    }
+
+    public int getBlockCount() {
+        return blockCount;
+    }
+
+    /**
+     * Заголовки файла в порядке следования. Как и у блоков из {@link #parseWindow}, смещение
+     * заголовка — байтовое смещение его строки в файле.
+     */
+    public List<MarkdownBlock> getHeadingBlocks() {
+        return headingBlocks;
+    }
+
+    /**
+     * Номера блоков заголовков из {@link #getHeadingBlocks()}
+     */
+    public int[] getHeadingBlockIndices() {
+        return Arrays.copyOf(headingBlockIndices, headingBlocks.size());
+    }
+
+    /**
+     * Декодирует текст окна; строки разделяются только '\n'
+     */
+    public String readWindow(int windowIndex) {
+        int startOffset = getLineStartOffset(getWindowStartLine(windowIndex));
+        int endOffset = getLineStartOffset(getWindowEndLine(windowIndex));
+        return decode(startOffset, endOffset);
+    }
+
+    /**
+     * Разбирает окно в блоки. Номера строк блоков глобальные, а смещение блока — байтовое
+     * смещение его первой строки в файле, включая '\r' и многобайтовые символы предыдущих строк.
+     * С позицией в символах текста из {@link #readAll} оно совпадает только для ASCII без '\r',
+     * поэтому для переходов между путями открытия используется номер строки.
+     */
+    public List<MarkdownBlock> parseWindow(int windowIndex) {
+        return MarkdownBlockParser.parse(
+                readWindow(windowIndex),
+                getWindowStartLine(windowIndex),
+                lineStartOffsets,
+                windowsStartingInsideCodeBlock.get(windowIndex));
+    }
+
+    /**
+     * Декодирует весь файл, например для передачи в редактор
+     */
+    public String readAll() {
+        return decode(0, mappedContent.limit());
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (fileDescriptor != null) {
+            fileDescriptor.close();
+        }
+    }
+
+    private int getLineStartOffset(int lineIndex) {
+        return lineIndex < lineCount ? lineStartOffsets[lineIndex] : mappedContent.limit();
+    }
+
+    private String decode(int startOffset, int endOffset) {
+        ByteBuffer windowBytes = mappedContent.duplicate();
+        windowBytes.limit(endOffset);
+        windowBytes.position(startOffset);
+        String text = StandardCharsets.UTF_8.decode(windowBytes).toString();
+        return text.indexOf('\r') >= 0 ? text.replace("\r\n", "\n") : text;
+    }
+
+    /**
+     * Один проход по байтам файла: начала строк, границы окон, состояние блоков кода и число блоков.
+     * Разделители строк, обратные кавычки, '#' и '|' однобайтовые в UTF-8, поэтому декодируются
+     * только строки заголовков и строки с '|', которые могут начинать таблицу.
+     */
+    private void buildLineIndex() {
+        int contentLength = mappedContent.limit();
+        boolean isInsideCodeBlock = false;
+        boolean isPreviousLineBlank = false;
+        int windowStartOffset = 0;
+        int lineStartOffset = 0;
+
+        while (lineStartOffset < contentLength) {
+            int windowBytes = lineStartOffset - windowStartOffset;
+            boolean isSoftBoundary = windowBytes >= TARGET_WINDOW_BYTES && isPreviousLineBlank && !isInsideCodeBlock;
+            if (lineCount == 0 || isSoftBoundary || windowBytes >= MAX_WINDOW_BYTES) {
+                finishWindowBlocks(isInsideCodeBlock);
+                addWindow(lineCount, isInsideCodeBlock);
+                windowStartOffset = lineStartOffset;
+            }
+            int lineIndex = lineCount;
+            addLine(lineStartOffset);
+
+            int contentStart = lineStartOffset;
+            while (contentStart < contentLength && isWhitespaceByte(mappedContent.get(contentStart))) {
+                contentStart++;
+            }
+            int lineEndOffset = contentStart;
+            while (lineEndOffset < contentLength && mappedContent.get(lineEndOffset) != '\n') {
+                lineEndOffset++;
+            }
+
+            boolean isBlank = contentStart >= lineEndOffset;
+            if (!isBlank && isCodeFence(contentStart, lineEndOffset)) {
+                if (isInsideCodeBlock) {
+                    blockCount++;
+                } else {
+                    isCodeBlockEmpty = true;
+                }
+                isInsideCodeBlock = !isInsideCodeBlock;
+            } else if (isInsideCodeBlock) {
+                isCodeBlockEmpty = false;
+            } else if (isBlank) {
+                isInsideTable = false;
+            } else {
+                countLineBlocks(lineIndex, lineStartOffset, lineEndOffset);
+            }
+            isPreviousLineBlank = isBlank;
+            lineStartOffset = lineEndOffset + 1;
+        }
+        finishWindowBlocks(isInsideCodeBlock);
+
+        lineStartOffsets = Arrays.copyOf(lineStartOffsets, lineCount);
+        windowStartLines = Arrays.copyOf(windowStartLines, windowCount);
+        windowFirstBlocks = Arrays.copyOf(windowFirstBlocks, windowCount);
+    }
+
+    /**
+     * Считает блоки непустой строки вне блока кода по тем же правилам, что и
+     * {@link MarkdownBlockParser#parse}: строка таблицы продолжает таблицу, строка-разделитель
+     * начинает новую, а любая другая строка — это ровно один блок
+     */
+    private void countLineBlocks(int lineIndex, int lineStartOffset, int lineEndOffset) {
+        // Окно декодируется с заменой "\r\n" на "\n", так что '\r' в конец строки не входит
+        int lineContentEnd = lineEndOffset;
+        if (lineEndOffset < mappedContent.limit() && lineContentEnd > lineStartOffset
+                && mappedContent.get(lineContentEnd - 1) == '\r') {
+            lineContentEnd--;
+        }
+
+        if (containsByte(lineStartOffset, lineContentEnd, (byte) '|')) {
+            if (!isInsideTable && MarkdownBlockParser.containsTableHeaderSeparator(
+                    decode(lineStartOffset, lineContentEnd))) {
+                isInsideTable = true;
+                blockCount++;
+            }
+            if (isInsideTable) {
+                return;
+            }
+        } else {
+            isInsideTable = false;
+        }
+
+        int headingLevel = 0;
+        while (headingLevel < 6 && lineStartOffset + headingLevel < lineContentEnd
+                && mappedContent.get(lineStartOffset + headingLevel) == '#') {
+            headingLevel++;
+        }
+        if (headingLevel > 0 && lineStartOffset + headingLevel < lineContentEnd
+                && mappedContent.get(lineStartOffset + headingLevel) == ' ') {
+            if (headingBlocks.size() == headingBlockIndices.length) {
+                headingBlockIndices = Arrays.copyOf(headingBlockIndices, headingBlocks.size() * 2);
+            }
+            headingBlockIndices[headingBlocks.size()] = blockCount;
+            headingBlocks.add(new MarkdownBlock(MarkdownBlock.Type.HEADING,
+                    decode(lineStartOffset + headingLevel + 1, lineContentEnd), headingLevel, null,
+                    lineIndex, lineStartOffset));
+        }
+        blockCount++;
+    }
+
+    /**
+     * Незакрытый блок кода в конце окна становится блоком, только если в нём есть строки;
+     * таблица и блок кода следующего окна начинаются заново
+     */
+    private void finishWindowBlocks(boolean isInsideCodeBlock) {
+        if (windowCount > 0 && isInsideCodeBlock && !isCodeBlockEmpty) {
+            blockCount++;
+        }
+        isInsideTable = false;
+        isCodeBlockEmpty = true;
+    }
+
+    private boolean containsByte(int startOffset, int endOffset, byte value) {
+        for (int offset = startOffset; offset < endOffset; offset++) {
+            if (mappedContent.get(offset) == value) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean isCodeFence(int contentStart, int lineEndOffset) {
+        return lineEndOffset - contentStart >= 3
+                && mappedContent.get(contentStart) == '`'
+                && mappedContent.get(contentStart + 1) == '`'
+                && mappedContent.get(contentStart + 2) == '`';
+    }
+
+    /**
+     * Пробельные символы в смысле {@link String#trim()}, кроме перевода строки
+     */
+    private static boolean isWhitespaceByte(byte value) {
+        return value != '\n' && value >= 0 && value <= ' ';
+    }
+
+    private void addLine(int lineStartOffset) {
+        if (lineCount == lineStartOffsets.length) {
+            lineStartOffsets = Arrays.copyOf(lineStartOffsets, lineCount * 2);
+        }
+        lineStartOffsets[lineCount++] = lineStartOffset;
+    }
+
+    private void addWindow(int startLine, boolean startsInsideCodeBlock) {
+        if (windowCount == windowStartLines.length) {
+            windowStartLines = Arrays.copyOf(windowStartLines, windowCount * 2);
+        }
+        if (windowCount == windowFirstBlocks.length) {
+            windowFirstBlocks = Arrays.copyOf(windowFirstBlocks, windowCount * 2);
+        }
+        windowsStartingInsideCodeBlock.set(windowCount, startsInsideCodeBlock);
+        windowFirstBlocks[windowCount] = blockCount;
+        windowStartLines[windowCount++] = startLine;
+    }
+}
@@ -0,0 +1,149 @@
+package com.example.markdowneditor;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Блок Markdown-документа (заголовок, абзац, элемент списка, код, таблица или изображение)
+ * вместе с его позицией в исходном тексте
+ */
+public class MarkdownBlock {
+    private static final Pattern IMAGE_PATTERN = Pattern.compile("!\\[(.*?)\\]\\((.*?)\\)");
+
+    public enum Type {
+        HEADING,
+        PARAGRAPH,
+        UNORDERED_LIST_ITEM,
+        ORDERED_LIST_ITEM,
+        CODE_BLOCK,
+        TABLE,
+        IMAGE
+    }
+
+    private final Type type;
+    private final String content;
+    private final int headingLevel;
+    private final List<String[]> tableRows;
+    private final int sourceLineIndex;
+    private final int sourceOffset;
+
+    private InlineMarkup.FormattedText formattedText;
+    private String plainText;
+
+    MarkdownBlock(Type type, String content, int headingLevel, List<String[]> tableRows,
+                  int sourceLineIndex, int sourceOffset) {
+        this.type = type;
+        this.content = content;
+        this.headingLevel = headingLevel;
+        this.tableRows = tableRows != null ? tableRows : Collections.emptyList();
+        this.sourceLineIndex = sourceLineIndex;
+        this.sourceOffset = sourceOffset;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * Исходное содержимое блока: текст заголовка, строка абзаца или списка, тело блока кода
+     */
+    public String getContent() {
+        return content;
+    }
+
+    public int getHeadingLevel() {
+        return headingLevel;
+    }
+
+    public List<String[]> getTableRows() {
+        return tableRows;
+    }
+
+    public int getSourceLineIndex() {
+        return sourceLineIndex;
+    }
+
+    public int getSourceOffset() {
+        return sourceOffset;
+    }
+
+    /**
+     * Строчное форматирование абзаца; для остальных типов блоков разметка не применяется
+     */
+    public synchronized InlineMarkup.FormattedText getFormattedText() {
+        if (formattedText == null) {
+            formattedText = InlineMarkup.parse(content);
+        }
+        return formattedText;
+    }
+
+    /**
+     * Текст блока ровно в том виде, в котором он показывается пользователю.
+     * Для таблиц ячейки перечисляются в порядке отрисовки через перевод строки.
+     */
+    public synchronized String getPlainText() {
+        if (plainText == null) {
+            plainText = buildPlainText();
+        }
+        return plainText;
+    }
+
+    /**
+     * Адрес изображения блока IMAGE в том виде, в котором его загружает просмотрщик,
+     * или null, если синтаксис изображения неверен
+     */
+    public String getImageSourceUrl() {
+        Matcher imageMatcher = IMAGE_PATTERN.matcher(content);
+        return imageMatcher.find() ? normalizeImageUrl(imageMatcher.group(2)) : null;
+    }
+
+    static String normalizeImageUrl(String rawImageUrl) {
+        String imageUrl = rawImageUrl
+                .replace(" ", "%20")
+                .replace("?", "%3F")
+                .replace("=", "%3D")
+                .replace("&", "%26");
+        if (imageUrl.contains("shields.io")) {
+            imageUrl += "?style=for-the-badge&logoWidth=40";
+        }
+        return imageUrl;
+    }
+
+    private String buildPlainText() {
+        switch (type) {
+            case PARAGRAPH:
+                return getFormattedText().text;
+            case UNORDERED_LIST_ITEM:
+                return "• " + content.replaceFirst("^\\s*[-*+]\\s+", "");
+            case ORDERED_LIST_ITEM:
+                return content.replaceFirst("^(\\s*\\d+\\.)\\s+", "$1 ");
+            case TABLE:
+                return buildTablePlainText();
+            case IMAGE:
+                Matcher imageMatcher = IMAGE_PATTERN.matcher(content);
+                return imageMatcher.find() ? imageMatcher.group(1) : "";
+            case HEADING:
+            case CODE_BLOCK:
+            default:
+                return content;
+        }
+    }
+
+    private String buildTablePlainText() {
+        StringBuilder tableText = new StringBuilder();
+        for (int rowIndex = 0; rowIndex < tableRows.size(); rowIndex++) {
+            if (MarkdownBlockParser.isTableSeparatorRow(tableRows, rowIndex)) {
+                continue;
+            }
+            for (String cellContent : tableRows.get(rowIndex)) {
+                if (tableText.length() > 0) {
+                    tableText.append('\n');
+                }
+                tableText.append(cellContent.trim());
+            }
+        }
+        return tableText.toString();
+    }
+}
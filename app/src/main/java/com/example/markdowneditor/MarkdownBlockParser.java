@@ -0,0 +1,176 @@
+package com.example.markdowneditor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Разбивает Markdown-текст на блоки без создания View, чтобы разбор можно было
+ * переиспользовать для поиска и выполнять вне главного потока
+ */
+public final class MarkdownBlockParser {
+
+    private MarkdownBlockParser() {
+    }
+
+    public static List<MarkdownBlock> parse(String markdownContent) {
+        return parse(markdownContent, 0, null, false);
+    }
+
+    /**
+     * Разбирает фрагмент большого документа. Номера строк блоков отсчитываются от firstLineIndex,
+     * а смещение блока берётся из sourceLineOffsets по глобальному номеру его первой строки;
+     * без sourceLineOffsets смещение считается в символах самого фрагмента.
+     * startsInsideCodeBlock означает, что фрагмент начинается внутри блока кода,
+     * открытого в предыдущем фрагменте.
+     */
+    public static List<MarkdownBlock> parse(String markdownContent, int firstLineIndex, int[] sourceLineOffsets,
+                                            boolean startsInsideCodeBlock) {
+        List<MarkdownBlock> parsedBlocks = new ArrayList<>();
+        boolean isInsideCodeBlock = startsInsideCodeBlock;
+        boolean isInsideTable = false;
+        List<String[]> tableRowsCollection = new ArrayList<>();
+        StringBuilder codeBlockContent = new StringBuilder();
+        int codeBlockLineIndex = firstLineIndex;
+        int codeBlockOffset = sourceLineOffsets != null && firstLineIndex < sourceLineOffsets.length
+                ? sourceLineOffsets[firstLineIndex]
+                : 0;
+        int tableLineIndex = 0;
+        int tableOffset = 0;
+
+        int lineIndex = 0;
+        int lineStartOffset = 0;
+        int contentLength = markdownContent.length();
+        while (lineStartOffset < contentLength) {
+            int lineEndOffset = markdownContent.indexOf('\n', lineStartOffset);
+            if (lineEndOffset == -1) {
+                lineEndOffset = contentLength;
+            }
+            String currentLine = markdownContent.substring(lineStartOffset, lineEndOffset);
+            int currentLineIndex = firstLineIndex + lineIndex;
+            int currentLineOffset = sourceLineOffsets != null
+                    ? sourceLineOffsets[currentLineIndex]
+                    : lineStartOffset;
+            lineIndex++;
+            lineStartOffset = lineEndOffset + 1;
+
+            if (currentLine.trim().startsWith("```")) {
+                if (isInsideCodeBlock) {
+                    parsedBlocks.add(new MarkdownBlock(MarkdownBlock.Type.CODE_BLOCK,
+                            codeBlockContent.toString(), 0, null, codeBlockLineIndex, codeBlockOffset));
+                    codeBlockContent.setLength(0);
+                    isInsideCodeBlock = false;
+                } else {
+                    isInsideCodeBlock = true;
+                    codeBlockLineIndex = currentLineIndex;
+                    codeBlockOffset = currentLineOffset;
+                }
+                continue;
+            }
+
+            if (isInsideCodeBlock) {
+                codeBlockContent.append(currentLine).append("\n");
+                continue;
+            }
+
+            if (currentLine.trim().isEmpty()) {
+                if (isInsideTable) {
+                    parsedBlocks.add(createTableBlock(tableRowsCollection, tableLineIndex, tableOffset));
+                    tableRowsCollection = new ArrayList<>();
+                    isInsideTable = false;
+                }
+                continue;
+            }
+
+            if (currentLine.contains("|")) {
+                if (!isInsideTable && containsTableHeaderSeparator(currentLine)) {
+                    isInsideTable = true;
+                    tableLineIndex = currentLineIndex;
+                    tableOffset = currentLineOffset;
+                }
+
+                if (isInsideTable) {
+                    tableRowsCollection.add(parseTableRow(currentLine));
+                    continue;
+                }
+            } else if (isInsideTable) {
+                parsedBlocks.add(createTableBlock(tableRowsCollection, tableLineIndex, tableOffset));
+                tableRowsCollection = new ArrayList<>();
+                isInsideTable = false;
+            }
+
+            int headingLevel = detectHeadingLevel(currentLine);
+            if (headingLevel > 0) {
+                parsedBlocks.add(new MarkdownBlock(MarkdownBlock.Type.HEADING,
+                        currentLine.substring(headingLevel + 1), headingLevel, null,
+                        currentLineIndex, currentLineOffset));
+            }
+            else if (currentLine.matches("^\\s*[-*+]\\s.*")) {
+                parsedBlocks.add(new MarkdownBlock(MarkdownBlock.Type.UNORDERED_LIST_ITEM,
+                        currentLine, 0, null, currentLineIndex, currentLineOffset));
+            }
+            else if (currentLine.matches("^\\s*\\d+\\.\\s.*")) {
+                parsedBlocks.add(new MarkdownBlock(MarkdownBlock.Type.ORDERED_LIST_ITEM,
+                        currentLine, 0, null, currentLineIndex, currentLineOffset));
+            }
+            else if (currentLine.startsWith("![")) {
+                parsedBlocks.add(new MarkdownBlock(MarkdownBlock.Type.IMAGE,
+                        currentLine, 0, null, currentLineIndex, currentLineOffset));
+            }
+            else {
+                parsedBlocks.add(new MarkdownBlock(MarkdownBlock.Type.PARAGRAPH,
+                        currentLine, 0, null, currentLineIndex, currentLineOffset));
+            }
+        }
+
+        if (isInsideTable && !tableRowsCollection.isEmpty()) {
+            parsedBlocks.add(createTableBlock(tableRowsCollection, tableLineIndex, tableOffset));
+        }
+
+        if (isInsideCodeBlock && codeBlockContent.length() > 0) {
+            parsedBlocks.add(new MarkdownBlock(MarkdownBlock.Type.CODE_BLOCK,
+                    codeBlockContent.toString(), 0, null, codeBlockLineIndex, codeBlockOffset));
+        }
+
+        return parsedBlocks;
+    }
+
+    /**
+     * Возвращает уровень заголовка (1-6) или 0, если строка не является заголовком
+     */
+    static int detectHeadingLevel(String line) {
+        int hashCount = 0;
+        while (hashCount < line.length() && hashCount < 6 && line.charAt(hashCount) == '#') {
+            hashCount++;
+        }
+        if (hashCount > 0 && hashCount < line.length() && line.charAt(hashCount) == ' ') {
+            return hashCount;
+        }
+        return 0;
+    }
+
+    static String[] parseTableRow(String tableRowText) {
+        String trimmedRow = tableRowText.replaceAll("^\\||\\|$", "");
+        return trimmedRow.split("\\s*\\|\\s*", -1);
+    }
+
+    static boolean containsTableHeaderSeparator(String potentialSeparatorRow) {
+        String[] tableCells = parseTableRow(potentialSeparatorRow);
+        for (String cellContent : tableCells) {
+            if (cellContent.trim().matches(":?-+:?")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Строка-разделитель заголовка таблицы не отображается, поэтому пропускается при отрисовке
+     */
+    static boolean isTableSeparatorRow(List<String[]> tableRows, int rowIndex) {
+        return rowIndex == 1 && containsTableHeaderSeparator(tableRows.get(rowIndex)[0]);
+    }
+
+    private static MarkdownBlock createTableBlock(List<String[]> tableRows, int lineIndex, int offset) {
+        return new MarkdownBlock(MarkdownBlock.Type.TABLE, "", 0, tableRows, lineIndex, offset);
+    }
+}
@@ -0,0 +1,82 @@
+package com.example.markdowneditor;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Результат разбора Markdown-документа: список блоков, поисковый индекс и оглавление
+ */
+public class MarkdownDocument {
+    private final List<MarkdownBlock> blocks;
+    private final DocumentSearchIndex searchIndex;
+    private final DocumentOutline outline;
+    private volatile long[] estimatedHeightsBeforeBlocks;
+
+    public MarkdownDocument(List<MarkdownBlock> blocks) {
+        this(blocks, new DocumentSearchIndex(blocks), new DocumentOutline(blocks));
+    }
+
+    /**
+     * Для документов, блоки которых разбираются по требованию: индекс может отсутствовать
+     */
+    protected MarkdownDocument(List<MarkdownBlock> blocks, DocumentSearchIndex searchIndex,
+                               DocumentOutline outline) {
+        this.blocks = Collections.unmodifiableList(blocks);
+        this.searchIndex = searchIndex;
+        this.outline = outline;
+    }
+
+    public static MarkdownDocument parse(String markdownContent) {
+        return new MarkdownDocument(MarkdownBlockParser.parse(markdownContent));
+    }
+
+    public List<MarkdownBlock> getBlocks() {
+        return blocks;
+    }
+
+    /**
+     * Индекс всего документа или null, если документ не держит все блоки в памяти
+     * (см. {@link MappedMarkdownDocument#search})
+     */
+    public DocumentSearchIndex getSearchIndex() {
+        return searchIndex;
+    }
+
+    public DocumentOutline getOutline() {
+        return outline;
+    }
+
+    /**
+     * Можно ли получить блок из {@link #getBlocks()}, не разбирая текст в вызывающем потоке.
+     * Если нет, документ готовит блок в фоне, а вызывающему стоит повторить попытку в следующем кадре.
+     * Блоки документа в памяти готовы всегда.
+     */
+    boolean prepareBlock(int blockIndex) {
+        return true;
+    }
+
+    /**
+     * Сохраняет оценки высоты блоков в пикселях. Оценки считаются в фоне вместе с разбором
+     * (см. {@link SectionedDocumentRenderer#estimateBlockHeights}), чтобы при показе документа
+     * не просматривать текст всех блоков в главном потоке.
+     */
+    void setEstimatedBlockHeights(int[] blockHeights) {
+        long[] heightsBeforeBlocks = new long[blockHeights.length + 1];
+        for (int blockIndex = 0; blockIndex < blockHeights.length; blockIndex++) {
+            heightsBeforeBlocks[blockIndex + 1] = heightsBeforeBlocks[blockIndex] + blockHeights[blockIndex];
+        }
+        estimatedHeightsBeforeBlocks = heightsBeforeBlocks;
+    }
+
+    boolean hasEstimatedBlockHeights() {
+        return estimatedHeightsBeforeBlocks != null;
+    }
+
+    /**
+     * Оценка суммарной высоты блоков [fromBlock, toBlock); требует {@link #hasEstimatedBlockHeights()}
+     */
+    long getEstimatedHeight(int fromBlock, int toBlock) {
+        long[] heightsBeforeBlocks = estimatedHeightsBeforeBlocks;
+        return heightsBeforeBlocks[toBlock] - heightsBeforeBlocks[fromBlock];
+    }
+}
@@ -0,0 +1,126 @@
+package com.example.markdowneditor;
+
+import java.io.BufferedReader;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+/**
+ * Загрузка Markdown-документов по HTTP(S): используется главным экраном, просмотрщиком при
+ * переходе по ссылке и фоновой предзагрузкой связанных документов
+ */
+public final class MarkdownDownloader {
+    private MarkdownDownloader() {
+    }
+
+    /**
+     * Скачивает текстовый документ; бросает исключение, если сервер вернул не текст
+     */
+    public static String download(String documentUrl) throws IOException {
+        return download(documentUrl, Long.MAX_VALUE);
+    }
+
+    /**
+     * То же, но загрузка прерывается исключением, как только получено больше maxBytes байт
+     */
+    public static String download(String documentUrl, long maxBytes) throws IOException {
+        HttpURLConnection connection = null;
+        try {
+            String url = convertGoogleDriveUrl(documentUrl);
+            connection = (HttpURLConnection) new URL(url).openConnection();
+            connection.setRequestProperty("User-Agent", "Mozilla/5.0");
+            connection.setConnectTimeout(15000);
+            connection.connect();
+
+            // Проверяем Content-Type
+            String contentType = connection.getContentType();
+            if (contentType == null || !contentType.startsWith("text/")) {
+                throw new IOException("Файл не является текстовым (Content-Type: " + contentType + ")");
+            }
+            if (connection.getContentLength() > maxBytes) {
+                throw new IOException("Документ больше " + maxBytes + " байт");
+            }
+
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                    new LimitedInputStream(connection.getInputStream(), maxBytes)))) {
+                StringBuilder result = new StringBuilder();
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    result.append(line).append("\n");
+                }
+                return result.toString();
+            }
+        } finally {
+            if (connection != null) {
+                connection.disconnect();
+            }
+        }
+    }
+
+    /**
+     * Поток, который бросает исключение при чтении сверх лимита, не дочитывая ответ до конца
+     */
+    private static final class LimitedInputStream extends FilterInputStream {
+        private final long maxBytes;
+        private long readBytes;
+
+        LimitedInputStream(InputStream inputStream, long maxBytes) {
+            super(inputStream);
+            this.maxBytes = maxBytes;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int value = super.read();
+            if (value != -1) {
+                countBytes(1);
+            }
+            return value;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int readCount = super.read(buffer, offset, length);
+            if (readCount > 0) {
+                countBytes(readCount);
+            }
+            return readCount;
+        }
+
+        private void countBytes(int byteCount) throws IOException {
+            readBytes += byteCount;
+            if (readBytes > maxBytes) {
+                throw new IOException("Документ больше " + maxBytes + " байт");
+            }
+        }
+    }
+
+    static String convertGoogleDriveUrl(String originalUrl) {
+        return originalUrl.replace(
+                "https://drive.google.com/file/d/",
+                "https://drive.google.com/uc?export=download&id="
+        ).split("/view")[0];
+    }
+
+    /**
+     * Ссылка указывает на Markdown-документ, который можно открыть во встроенном просмотрщике
+     */
+    public static boolean isMarkdownDocumentUrl(String url) {
+        if (url == null || !(url.startsWith("http://") || url.startsWith("https://"))) {
+            return false;
+        }
+        String path = url;
+        int queryStart = path.indexOf('?');
+        if (queryStart >= 0) {
+            path = path.substring(0, queryStart);
+        }
+        int fragmentStart = path.indexOf('#');
+        if (fragmentStart >= 0) {
+            path = path.substring(0, fragmentStart);
+        }
+        return LibraryIndexer.isMarkdownFileName(path);
+    }
+}
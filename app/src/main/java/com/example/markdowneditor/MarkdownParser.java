@@ -4,17 +4,21 @@ import android.content.Context;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.graphics.Color;
+import android.graphics.Point;
 import android.graphics.Typeface;
 import android.os.AsyncTask;
 import android.text.SpannableStringBuilder;
 import android.text.method.LinkMovementMethod;
+import android.text.style.ClickableSpan;
 import android.text.style.StrikethroughSpan;
 import android.text.style.StyleSpan;
+import android.util.DisplayMetrics;
 import android.util.LruCache;
 import android.util.Log;
 import android.util.TypedValue;
 import android.view.Gravity;
 import android.view.View;
+import android.view.ViewGroup;
 import android.widget.ImageView;
 import android.widget.TableLayout;
 import android.widget.TableRow;
@@ -26,7 +30,10 @@ import java.lang.ref.WeakReference;
 import java.net.HttpURLConnection;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -37,10 +44,28 @@ import javax.net.ssl.HttpsURLConnection;
  */
 public class MarkdownParser {
     private static final String LOG_TAG = "MarkdownParser";
+    private static final int VECTOR_IMAGE_CACHE_SIZE = 64;
+    private static final int MAX_VECTOR_RASTER_SIDE_PIXELS = 4096;
     private final Context applicationContext;
     private final LruCache<String, Bitmap> imageCache;
-    private final List<ImageLoadingTask> activeImageLoadingTasks;
+    /**
+     * Разобранные SVG по URL: растр под другой размер экрана строится из них без повторной загрузки
+     */
+    private final LruCache<String, SvgDocument> vectorImageCache = new LruCache<>(VECTOR_IMAGE_CACHE_SIZE);
+    private final Map<String, ImageLoadingTask> activeImageLoadingTasks;
+    private final RenderMetrics renderMetrics = new RenderMetrics();
+    private long imageCacheHitBaseline;
+    private long imageCacheMissBaseline;
+    private long imageCacheEvictionBaseline;
     private String baseDocumentUrl = "";
+    private LinkClickListener linkClickListener;
+
+    /**
+     * Получает нажатия на ссылки в тексте; URL уже разрешён относительно базового URL документа
+     */
+    public interface LinkClickListener {
+        void onLinkClicked(String resolvedUrl);
+    }
 
     public MarkdownParser(Context context) {
         this.applicationContext = context.getApplicationContext();
@@ -52,7 +77,7 @@ public class MarkdownParser {
                 return bitmap.getByteCount() / 1024;
             }
         };
-        this.activeImageLoadingTasks = new ArrayList<>();
+        this.activeImageLoadingTasks = new HashMap<>();
     }
 
     /**
@@ -62,106 +87,142 @@ public class MarkdownParser {
         this.baseDocumentUrl = baseUrl;
     }
 
+    /**
+     * Парсер живёт дольше Activity, поэтому слушатель нужно снимать при её уничтожении
+     */
+    public void setLinkClickListener(LinkClickListener listener) {
+        this.linkClickListener = listener;
+    }
+
+    /**
+     * Разрешает ссылку относительно базового URL документа. Ссылки на якоря внутри документа
+     * («#раздел») и ссылки без базового URL возвращаются без изменений.
+     */
+    public String resolveLinkUrl(String linkUrl) {
+        return InlineMarkup.resolveLinkUrl(baseDocumentUrl, linkUrl);
+    }
+
+    /**
+     * Метрики текущего документа со свежей статистикой кэша изображений
+     */
+    public RenderMetrics getRenderMetrics() {
+        renderMetrics.setImageCacheStats(
+                imageCache.hitCount() - imageCacheHitBaseline,
+                imageCache.missCount() - imageCacheMissBaseline,
+                imageCache.evictionCount() - imageCacheEvictionBaseline,
+                imageCache.size(),
+                imageCache.maxSize());
+        return renderMetrics;
+    }
+
+    /**
+     * Начинает сбор метрик для нового документа
+     */
+    public void resetRenderMetrics() {
+        renderMetrics.reset();
+        imageCacheHitBaseline = imageCache.hitCount();
+        imageCacheMissBaseline = imageCache.missCount();
+        imageCacheEvictionBaseline = imageCache.evictionCount();
+    }
+
     /**
      * Преобразует Markdown-текст в список View элементов
      */
     public List<View> parseMarkdownText(String markdownContent) {
-        List<View> parsedViews = new ArrayList<>();
-        String[] documentLines = markdownContent.split("\n");
-        boolean isInsideCodeBlock = false;
-        boolean isInsideTable = false;
-        List<String[]> tableRowsCollection = new ArrayList<>();
-        StringBuilder codeBlockContent = new StringBuilder();
-
-        for (String currentLine : documentLines) {
-            if (currentLine.trim().startsWith("```")) {
-                if (isInsideCodeBlock) {
-                    parsedViews.add(createCodeBlockView(codeBlockContent.toString()));
-                    codeBlockContent.setLength(0);
-                    isInsideCodeBlock = false;
-                } else {
-                    isInsideCodeBlock = true;
-                }
-                continue;
-            }
+        return createBlockViews(parseDocument(markdownContent));
+    }
 
-            if (isInsideCodeBlock) {
-                codeBlockContent.append(currentLine).append("\n");
-                continue;
-            }
+    /**
+     * Разбирает Markdown-текст в блоки и строит по ним поисковый индекс без создания View
+     */
+    public MarkdownDocument parseDocument(String markdownContent) {
+        List<MarkdownBlock> blocks;
+        long stageStart = renderMetrics.beginStage(RenderMetrics.Stage.PARSE_BLOCKS);
+        try {
+            blocks = MarkdownBlockParser.parse(markdownContent);
+        } finally {
+            renderMetrics.endStage(RenderMetrics.Stage.PARSE_BLOCKS, stageStart);
+        }
 
-            if (currentLine.trim().isEmpty()) {
-                if (isInsideTable) {
-                    parsedViews.add(createTableView(tableRowsCollection));
-                    tableRowsCollection.clear();
-                    isInsideTable = false;
+        stageStart = renderMetrics.beginStage(RenderMetrics.Stage.INLINE_FORMAT);
+        try {
+            for (MarkdownBlock block : blocks) {
+                if (block.getType() == MarkdownBlock.Type.PARAGRAPH) {
+                    block.getFormattedText();
                 }
-                continue;
             }
+        } finally {
+            renderMetrics.endStage(RenderMetrics.Stage.INLINE_FORMAT, stageStart);
+        }
 
-            if (currentLine.contains("|")) {
-                if (!isInsideTable && containsTableHeaderSeparator(currentLine)) {
-                    isInsideTable = true;
-                }
-
-                if (isInsideTable) {
-                    tableRowsCollection.add(parseTableRow(currentLine));
-                    continue;
-                }
-            } else if (isInsideTable) {
-                parsedViews.add(createTableView(tableRowsCollection));
-                tableRowsCollection.clear();
-                isInsideTable = false;
-            }
+        stageStart = renderMetrics.beginStage(RenderMetrics.Stage.INDEX);
+        try {
+            return new MarkdownDocument(blocks);
+        } finally {
+            renderMetrics.endStage(RenderMetrics.Stage.INDEX, stageStart);
+        }
+    }
 
-            if (currentLine.startsWith("# ")) {
-                parsedViews.add(createHeadingView(currentLine.substring(2), 1));
-            }
-            else if (currentLine.startsWith("## ")) {
-                parsedViews.add(createHeadingView(currentLine.substring(3), 2));
-            }
-            else if (currentLine.startsWith("### ")) {
-                parsedViews.add(createHeadingView(currentLine.substring(4), 3));
-            }
-            else if (currentLine.startsWith("#### ")) {
-                parsedViews.add(createHeadingView(currentLine.substring(5), 4));
-            }
-            else if (currentLine.startsWith("##### ")) {
-                parsedViews.add(createHeadingView(currentLine.substring(6), 5));
-            }
-            else if (currentLine.startsWith("###### ")) {
-                parsedViews.add(createHeadingView(currentLine.substring(7), 6));
-            }
-            else if (currentLine.matches("^\\s*[-*+]\\s.*")) {
-                parsedViews.add(createUnorderedListItemView(currentLine));
-            }
-            else if (currentLine.matches("^\\s*\\d+\\.\\s.*")) {
-                parsedViews.add(createOrderedListItemView(currentLine));
-            }
-            else if (currentLine.startsWith("![")) {
-                parsedViews.add(createImageElementView(currentLine));
-            }
-            else {
-                parsedViews.add(createBasicTextView(currentLine));
-            }
+    /**
+     * Создаёт по одному View на каждый блок документа, в том же порядке, что и блоки
+     */
+    public List<View> createBlockViews(MarkdownDocument document) {
+        List<View> parsedViews = new ArrayList<>();
+        for (MarkdownBlock block : document.getBlocks()) {
+            parsedViews.add(createBlockView(block));
         }
+        return parsedViews;
+    }
 
-        if (isInsideTable && !tableRowsCollection.isEmpty()) {
-            parsedViews.add(createTableView(tableRowsCollection));
+    public View createBlockView(MarkdownBlock block) {
+        long stageStart = renderMetrics.beginStage(RenderMetrics.Stage.CREATE_VIEWS);
+        try {
+            View blockView = createViewForBlockType(block);
+            renderMetrics.addCreatedViews(countViews(blockView));
+            return blockView;
+        } finally {
+            renderMetrics.endStage(RenderMetrics.Stage.CREATE_VIEWS, stageStart);
         }
+    }
 
-        if (isInsideCodeBlock && codeBlockContent.length() > 0) {
-            parsedViews.add(createCodeBlockView(codeBlockContent.toString()));
+    /**
+     * Число View в поддереве, включая сам корень
+     */
+    static int countViews(View rootView) {
+        int viewCount = 1;
+        if (rootView instanceof ViewGroup) {
+            ViewGroup viewGroup = (ViewGroup) rootView;
+            for (int childIndex = 0; childIndex < viewGroup.getChildCount(); childIndex++) {
+                viewCount += countViews(viewGroup.getChildAt(childIndex));
+            }
         }
+        return viewCount;
+    }
 
-        return parsedViews;
+    private View createViewForBlockType(MarkdownBlock block) {
+        switch (block.getType()) {
+            case HEADING:
+                return createHeadingView(block.getPlainText(), block.getHeadingLevel());
+            case UNORDERED_LIST_ITEM:
+            case ORDERED_LIST_ITEM:
+                return createListItemView(block.getPlainText());
+            case CODE_BLOCK:
+                return createCodeBlockView(block.getPlainText());
+            case TABLE:
+                return createTableView(block.getTableRows());
+            case IMAGE:
+                return createImageElementView(block.getContent());
+            case PARAGRAPH:
+            default:
+                return createBasicTextView(block.getFormattedText());
+        }
     }
 
     /**
      * Отменяет все активные задачи загрузки изображений
      */
     public void cancelAllPendingTasks() {
-        for (ImageLoadingTask task : activeImageLoadingTasks) {
+        for (ImageLoadingTask task : activeImageLoadingTasks.values()) {
             task.cancel(true);
         }
         activeImageLoadingTasks.clear();
@@ -172,16 +233,22 @@ public class MarkdownParser {
      */
     public void clearImageCache() {
         imageCache.evictAll();
+        vectorImageCache.evictAll();
     }
 
-    private TextView createBasicTextView(String textContent) {
+    private TextView createBasicTextView(InlineMarkup.FormattedText inlineText) {
         TextView textViewElement = new TextView(applicationContext);
-        SpannableStringBuilder formattedText = new SpannableStringBuilder(textContent);
-
-        applyTextFormattingBetweenDelimiters(formattedText, "**", new StyleSpan(Typeface.BOLD));
-        applyTextFormattingBetweenDelimiters(formattedText, "*", new StyleSpan(Typeface.ITALIC));
-        applyTextFormattingBetweenDelimiters(formattedText, "~~", new StrikethroughSpan());
-        processHyperlinksInText(formattedText);
+        SpannableStringBuilder formattedText = new SpannableStringBuilder(inlineText.text);
+
+        for (InlineMarkup.Span inlineSpan : inlineText.spans) {
+            Object textStyleSpan = createTextStyleSpan(inlineSpan);
+            if (textStyleSpan != null) {
+                formattedText.setSpan(textStyleSpan,
+                        inlineSpan.getStart(),
+                        inlineSpan.getEnd(),
+                        SpannableStringBuilder.SPAN_EXCLUSIVE_EXCLUSIVE);
+            }
+        }
 
         textViewElement.setText(formattedText);
         textViewElement.setMovementMethod(LinkMovementMethod.getInstance());
@@ -190,47 +257,42 @@ public class MarkdownParser {
         return textViewElement;
     }
 
-    private void applyTextFormattingBetweenDelimiters(SpannableStringBuilder textBuilder,
-                                                      String delimiter,
-                                                      Object textStyleSpan) {
-        int delimiterStartPosition;
-        while ((delimiterStartPosition = textBuilder.toString().indexOf(delimiter)) != -1) {
-            int delimiterEndPosition = textBuilder.toString().indexOf(
-                    delimiter, delimiterStartPosition + delimiter.length());
-
-            if (delimiterEndPosition != -1) {
-                textBuilder.delete(delimiterEndPosition, delimiterEndPosition + delimiter.length());
-                textBuilder.delete(delimiterStartPosition, delimiterStartPosition + delimiter.length());
-                textBuilder.setSpan(textStyleSpan,
-                        delimiterStartPosition,
-                        delimiterEndPosition - delimiter.length(),
-                        SpannableStringBuilder.SPAN_EXCLUSIVE_EXCLUSIVE);
-            }
+    private Object createTextStyleSpan(InlineMarkup.Span inlineSpan) {
+        switch (inlineSpan.style) {
+            case BOLD:
+                return new StyleSpan(Typeface.BOLD);
+            case ITALIC:
+                return new StyleSpan(Typeface.ITALIC);
+            case STRIKETHROUGH:
+                return new StrikethroughSpan();
+            case LINK:
+                return new DocumentLinkSpan(resolveLinkUrl(inlineSpan.url));
+            default:
+                return null;
         }
     }
 
-    private void processHyperlinksInText(SpannableStringBuilder textBuilder) {
-        Pattern hyperlinkPattern = Pattern.compile("\\[(.*?)\\]\\((.*?)\\)");
-        Matcher hyperlinkMatcher = hyperlinkPattern.matcher(textBuilder);
+    /**
+     * Ссылка, передающая нажатие текущему {@link LinkClickListener}
+     */
+    private class DocumentLinkSpan extends ClickableSpan {
+        private final String resolvedUrl;
 
-        while (hyperlinkMatcher.find()) {
-            String linkText = hyperlinkMatcher.group(1);
-            String linkUrl = hyperlinkMatcher.group(2);
-            textBuilder.replace(hyperlinkMatcher.start(), hyperlinkMatcher.end(), linkText);
+        DocumentLinkSpan(String resolvedUrl) {
+            this.resolvedUrl = resolvedUrl;
         }
-    }
 
-    private View createUnorderedListItemView(String listItemText) {
-        TextView listItemView = new TextView(applicationContext);
-        listItemView.setText("• " + listItemText.replaceFirst("^\\s*[-*+]\\s+", ""));
-        listItemView.setPadding(convertDpToPixels(16), 0, 0, 0);
-        listItemView.setTextSize(TypedValue.COMPLEX_UNIT_SP, 16);
-        return listItemView;
+        @Override
+        public void onClick(View widget) {
+            if (linkClickListener != null) {
+                linkClickListener.onLinkClicked(resolvedUrl);
+            }
+        }
     }
 
-    private View createOrderedListItemView(String listItemText) {
+    private View createListItemView(String listItemText) {
         TextView listItemView = new TextView(applicationContext);
-        listItemView.setText(listItemText.replaceFirst("^(\\s*\\d+\\.)\\s+", "$1 "));
+        listItemView.setText(listItemText);
         listItemView.setPadding(convertDpToPixels(16), 0, 0, 0);
         listItemView.setTextSize(TypedValue.COMPLEX_UNIT_SP, 16);
         return listItemView;
@@ -260,21 +322,6 @@ public class MarkdownParser {
         return headingView;
     }
 
-    private String[] parseTableRow(String tableRowText) {
-        String trimmedRow = tableRowText.replaceAll("^\\||\\|$", "");
-        return trimmedRow.split("\\s*\\|\\s*", -1);
-    }
-
-    private boolean containsTableHeaderSeparator(String potentialSeparatorRow) {
-        String[] tableCells = parseTableRow(potentialSeparatorRow);
-        for (String cellContent : tableCells) {
-            if (cellContent.trim().matches(":?-+:?")) {
-                return true;
-            }
-        }
-        return false;
-    }
-
     private TableLayout createTableView(List<String[]> tableRows) {
         TableLayout tableLayout = new TableLayout(applicationContext);
         tableLayout.setLayoutParams(new TableLayout.LayoutParams(
@@ -284,7 +331,7 @@ public class MarkdownParser {
         tableLayout.setStretchAllColumns(true);
 
         boolean[] isColumnRightAligned = new boolean[tableRows.get(0).length];
-        if (tableRows.size() > 1 && containsTableHeaderSeparator(tableRows.get(1)[0])) {
+        if (tableRows.size() > 1 && MarkdownBlockParser.isTableSeparatorRow(tableRows, 1)) {
             String[] alignmentMarkers = tableRows.get(1);
             for (int columnIndex = 0; columnIndex < alignmentMarkers.length; columnIndex++) {
                 String cellContent = alignmentMarkers[columnIndex].trim();
@@ -295,7 +342,7 @@ public class MarkdownParser {
         }
 
         for (int rowIndex = 0; rowIndex < tableRows.size(); rowIndex++) {
-            if (rowIndex == 1 && containsTableHeaderSeparator(tableRows.get(rowIndex)[0])) {
+            if (MarkdownBlockParser.isTableSeparatorRow(tableRows, rowIndex)) {
                 continue;
             }
 
@@ -350,15 +397,7 @@ public class MarkdownParser {
             }
 
             String imageDescription = imageMatcher.group(1);
-            String imageSourceUrl = imageMatcher.group(2)
-                    .replace(" ", "%20")
-                    .replace("?", "%3F")
-                    .replace("=", "%3D")
-                    .replace("&", "%26");
-
-            if (imageSourceUrl.contains("shields.io")) {
-                imageSourceUrl += "?style=for-the-badge&logoWidth=40";
-            }
+            String imageSourceUrl = MarkdownBlock.normalizeImageUrl(imageMatcher.group(2));
 
             if (!isSupportedImageFormat(imageSourceUrl)) {
                 return createErrorView("Unsupported image format");
@@ -369,11 +408,22 @@ public class MarkdownParser {
             imageViewElement.setAdjustViewBounds(true);
             imageViewElement.setScaleType(ImageView.ScaleType.FIT_CENTER);
             imageViewElement.setPadding(0, convertDpToPixels(8), 0, convertDpToPixels(8));
+
+            Bitmap cachedImage = getCachedImage(imageSourceUrl);
+            if (cachedImage != null) {
+                imageViewElement.setImageBitmap(cachedImage);
+                return imageViewElement;
+            }
             imageViewElement.setImageResource(R.drawable.ic_image_placeholder);
 
-            ImageLoadingTask imageLoadingTask = new ImageLoadingTask(imageSourceUrl, imageViewElement);
-            activeImageLoadingTasks.add(imageLoadingTask);
-            imageLoadingTask.execute();
+            ImageLoadingTask imageLoadingTask = activeImageLoadingTasks.get(imageSourceUrl);
+            if (imageLoadingTask != null) {
+                imageLoadingTask.addTargetImageView(imageViewElement);
+            } else {
+                imageLoadingTask = new ImageLoadingTask(imageSourceUrl, imageViewElement);
+                activeImageLoadingTasks.put(imageSourceUrl, imageLoadingTask);
+                imageLoadingTask.execute();
+            }
 
             return imageViewElement;
         } catch (Exception exception) {
@@ -383,7 +433,67 @@ public class MarkdownParser {
     }
 
     private boolean isSupportedImageFormat(String imageUrl) {
-        return imageUrl.matches("(?i).*\\.(png|jpg|jpeg|gif|webp|svg)(\\?.*)?$");
+        return imageUrl.matches("(?i).*\\.(png|jpg|jpeg|gif|webp)(\\?.*)?$") || isSvgUrl(imageUrl);
+    }
+
+    /**
+     * Бейджи shields.io отдаются в SVG даже без расширения в пути
+     */
+    private static boolean isSvgUrl(String imageUrl) {
+        return imageUrl.matches("(?i).*\\.svg(\\?.*)?$") || imageUrl.contains("shields.io");
+    }
+
+    private static boolean isSvgContentType(String contentType, String imageUrl) {
+        if (contentType == null) {
+            return false;
+        }
+        String normalizedContentType = contentType.toLowerCase(Locale.US);
+        return normalizedContentType.startsWith("image/svg+xml")
+                || (isSvgUrl(imageUrl) && normalizedContentType.matches("(text|application)/(xml|plain).*"));
+    }
+
+    /**
+     * Готовый bitmap из кэша. Для уже загруженного SVG ищется растр под текущий размер экрана.
+     */
+    private Bitmap getCachedImage(String imageUrl) {
+        SvgDocument vectorImage = vectorImageCache.get(imageUrl);
+        String cacheKey = vectorImage != null
+                ? createRasterCacheKey(imageUrl, calculateVectorRasterSize(vectorImage))
+                : imageUrl;
+        Bitmap cachedImage = imageCache.get(cacheKey);
+        return cachedImage != null && !cachedImage.isRecycled() ? cachedImage : null;
+    }
+
+    private static String createRasterCacheKey(String imageUrl, Point rasterSize) {
+        return imageUrl + "#" + rasterSize.x + "x" + rasterSize.y;
+    }
+
+    /**
+     * Собственный размер SVG в dp, уменьшенный до ширины экрана
+     */
+    private Point calculateVectorRasterSize(SvgDocument vectorImage) {
+        DisplayMetrics displayMetrics = applicationContext.getResources().getDisplayMetrics();
+        float scale = displayMetrics.density;
+        scale = Math.min(scale, displayMetrics.widthPixels / vectorImage.getWidth());
+        scale = Math.min(scale, MAX_VECTOR_RASTER_SIDE_PIXELS / vectorImage.getHeight());
+        return new Point(
+                Math.max(1, Math.round(vectorImage.getWidth() * scale)),
+                Math.max(1, Math.round(vectorImage.getHeight() * scale)));
+    }
+
+    /**
+     * Растеризует SVG под текущий экран и кладёт результат в кэш; вызывается вне главного потока
+     */
+    private Bitmap rasterizeAndCacheVectorImage(String imageUrl, SvgDocument vectorImage) {
+        Point rasterSize = calculateVectorRasterSize(vectorImage);
+        long decodeStart = renderMetrics.beginStage(RenderMetrics.Stage.IMAGE_DECODE);
+        try {
+            Bitmap rasterizedBitmap = vectorImage.rasterize(rasterSize.x, rasterSize.y);
+            imageCache.put(createRasterCacheKey(imageUrl, rasterSize), rasterizedBitmap);
+            return rasterizedBitmap;
+        } finally {
+            renderMetrics.endStage(RenderMetrics.Stage.IMAGE_DECODE, decodeStart);
+        }
     }
 
     private TextView createErrorView(String errorMessage) {
@@ -397,25 +507,39 @@ public class MarkdownParser {
         return (int) (dpValue * applicationContext.getResources().getDisplayMetrics().density);
     }
 
+    /**
+     * Загружает изображение один раз для всех ImageView с тем же URL, в том числе для View,
+     * пересозданных после смены конфигурации, пока загрузка ещё идёт
+     */
     private class ImageLoadingTask extends AsyncTask<Void, Void, Bitmap> {
         private final String imageSourceUrl;
-        private final WeakReference<ImageView> targetImageViewReference;
+        private final List<WeakReference<ImageView>> targetImageViewReferences = new ArrayList<>();
 
         ImageLoadingTask(String imageUrl, ImageView targetImageView) {
             this.imageSourceUrl = imageUrl;
-            this.targetImageViewReference = new WeakReference<>(targetImageView);
+            addTargetImageView(targetImageView);
+        }
+
+        void addTargetImageView(ImageView targetImageView) {
+            targetImageViewReferences.add(new WeakReference<>(targetImageView));
         }
 
         @Override
         protected Bitmap doInBackground(Void... voids) {
             if (isCancelled()) return null;
 
-            Bitmap cachedImage = imageCache.get(imageSourceUrl);
-            if (cachedImage != null && !cachedImage.isRecycled()) {
+            Bitmap cachedImage = getCachedImage(imageSourceUrl);
+            if (cachedImage != null) {
                 return cachedImage;
             }
+            SvgDocument cachedVectorImage = vectorImageCache.get(imageSourceUrl);
+            if (cachedVectorImage != null) {
+                return rasterizeAndCacheVectorImage(imageSourceUrl, cachedVectorImage);
+            }
 
             HttpURLConnection imageConnection = null;
+            long fetchStart = renderMetrics.beginStage(RenderMetrics.Stage.IMAGE_FETCH);
+            boolean isFetchStageOpen = true;
             try {
                 URL imageUrl = new URL(imageSourceUrl);
                 if (imageSourceUrl.startsWith("https")) {
@@ -435,18 +559,26 @@ public class MarkdownParser {
                 }
 
                 String responseContentType = imageConnection.getContentType();
-                if (responseContentType == null || !responseContentType.startsWith("image/")) {
+                boolean isVectorImage = isSvgContentType(responseContentType, imageSourceUrl);
+                if (!isVectorImage && (responseContentType == null || !responseContentType.startsWith("image/"))) {
                     Log.w(LOG_TAG, "Invalid content type: " + responseContentType);
                     return null;
                 }
 
-                return decodeAndCacheImageStream(imageConnection);
+                renderMetrics.endStage(RenderMetrics.Stage.IMAGE_FETCH, fetchStart);
+                isFetchStageOpen = false;
+                return isVectorImage
+                        ? decodeAndCacheVectorImage(imageConnection)
+                        : decodeAndCacheImageStream(imageConnection);
             } catch (Exception exception) {
                 if (!isCancelled()) {
                     Log.e(LOG_TAG, "Image loading error: " + imageSourceUrl, exception);
                 }
                 return null;
             } finally {
+                if (isFetchStageOpen) {
+                    renderMetrics.endStage(RenderMetrics.Stage.IMAGE_FETCH, fetchStart);
+                }
                 if (imageConnection != null) {
                     imageConnection.disconnect();
                 }
@@ -460,9 +592,26 @@ public class MarkdownParser {
             connection.setReadTimeout(10000);
         }
 
+        /**
+         * BitmapFactory не умеет SVG: документ разбирается один раз и сохраняется, а растр
+         * строится из него под нужный размер
+         */
+        private Bitmap decodeAndCacheVectorImage(HttpURLConnection connection) throws IOException {
+            SvgDocument vectorImage;
+            long decodeStart = renderMetrics.beginStage(RenderMetrics.Stage.IMAGE_DECODE);
+            try (InputStream inputStream = connection.getInputStream()) {
+                vectorImage = SvgParser.parse(inputStream);
+            } finally {
+                renderMetrics.endStage(RenderMetrics.Stage.IMAGE_DECODE, decodeStart);
+            }
+            vectorImageCache.put(imageSourceUrl, vectorImage);
+            return isCancelled() ? null : rasterizeAndCacheVectorImage(imageSourceUrl, vectorImage);
+        }
+
         private Bitmap decodeAndCacheImageStream(HttpURLConnection connection) throws IOException {
+            BitmapFactory.Options decodingOptions = new BitmapFactory.Options();
+            long decodeStart = renderMetrics.beginStage(RenderMetrics.Stage.IMAGE_DECODE);
             try (InputStream inputStream = connection.getInputStream()) {
-                BitmapFactory.Options decodingOptions = new BitmapFactory.Options();
                 decodingOptions.inJustDecodeBounds = true;
                 BitmapFactory.decodeStream(inputStream, null, decodingOptions);
 
@@ -473,20 +622,31 @@ public class MarkdownParser {
 
                 decodingOptions.inJustDecodeBounds = false;
                 decodingOptions.inPreferredConfig = Bitmap.Config.RGB_565;
+            } finally {
+                renderMetrics.endStage(RenderMetrics.Stage.IMAGE_DECODE, decodeStart);
+            }
 
-                connection.disconnect();
+            connection.disconnect();
+            long fetchStart = renderMetrics.beginStage(RenderMetrics.Stage.IMAGE_FETCH);
+            try {
                 connection = (HttpURLConnection) new URL(imageSourceUrl).openConnection();
                 configureConnectionSettings(connection);
+                connection.connect();
+            } finally {
+                renderMetrics.endStage(RenderMetrics.Stage.IMAGE_FETCH, fetchStart);
+            }
 
-                try (InputStream newInputStream = connection.getInputStream()) {
-                    Bitmap decodedBitmap = BitmapFactory.decodeStream(
-                            newInputStream, null, decodingOptions);
+            decodeStart = renderMetrics.beginStage(RenderMetrics.Stage.IMAGE_DECODE);
+            try (InputStream newInputStream = connection.getInputStream()) {
+                Bitmap decodedBitmap = BitmapFactory.decodeStream(
+                        newInputStream, null, decodingOptions);
 
-                    if (decodedBitmap != null) {
-                        imageCache.put(imageSourceUrl, decodedBitmap);
-                    }
-                    return decodedBitmap;
+                if (decodedBitmap != null) {
+                    imageCache.put(imageSourceUrl, decodedBitmap);
                 }
+                return decodedBitmap;
+            } finally {
+                renderMetrics.endStage(RenderMetrics.Stage.IMAGE_DECODE, decodeStart);
             }
         }
 
@@ -511,27 +671,34 @@ public class MarkdownParser {
 
         @Override
         protected void onPostExecute(Bitmap resultBitmap) {
-            activeImageLoadingTasks.remove(this);
-            ImageView targetImageView = targetImageViewReference.get();
-            if (targetImageView == null || isCancelled()) {
+            activeImageLoadingTasks.remove(imageSourceUrl);
+            if (isCancelled()) {
                 return;
             }
 
-            if (resultBitmap != null) {
-                targetImageView.setImageBitmap(resultBitmap);
-            } else {
-                targetImageView.setImageResource(R.drawable.ic_broken_image);
+            for (WeakReference<ImageView> targetImageViewReference : targetImageViewReferences) {
+                ImageView targetImageView = targetImageViewReference.get();
+                if (targetImageView == null) {
+                    continue;
+                }
+                if (resultBitmap != null) {
+                    targetImageView.setImageBitmap(resultBitmap);
+                } else {
+                    targetImageView.setImageResource(R.drawable.ic_broken_image);
+                }
             }
         }
     }
     public void cleanup() {
-        for (ImageLoadingTask task : activeImageLoadingTasks) {
+        for (ImageLoadingTask task : activeImageLoadingTasks.values()) {
             task.cancel(true);
         }
         activeImageLoadingTasks.clear();
 
         imageCache.evictAll();
+        vectorImageCache.evictAll();
 
         baseDocumentUrl = null;
+        linkClickListener = null;
     }
 }
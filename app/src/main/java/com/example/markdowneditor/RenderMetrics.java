@@ -0,0 +1,159 @@
+package com.example.markdowneditor;
+
+import android.os.Trace;
+import android.util.Log;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Реестр метрик отрисовки одного документа: время по этапам, число созданных View и
+ * статистика кэша изображений. Каждый этап также размечается секцией {@link Trace},
+ * чтобы его было видно в системной трассировке.
+ */
+public class RenderMetrics {
+    private static final String LOG_TAG = "RenderMetrics";
+
+    public enum Stage {
+        READ("md:read"),
+        PARSE_BLOCKS("md:parseBlocks"),
+        INLINE_FORMAT("md:inlineFormat"),
+        INDEX("md:index"),
+        /**
+         * Оценка высоты блоков для заглушек {@link SectionedDocumentRenderer}, в фоне после разбора
+         */
+        ESTIMATE("md:estimateHeights"),
+        CREATE_VIEWS("md:createViews"),
+        LAYOUT("md:layout"),
+        IMAGE_FETCH("md:imageFetch"),
+        IMAGE_DECODE("md:imageDecode");
+
+        final String traceSectionName;
+
+        Stage(String traceSectionName) {
+            this.traceSectionName = traceSectionName;
+        }
+    }
+
+    private final AtomicLongArray stageNanos = new AtomicLongArray(Stage.values().length);
+    private final AtomicLongArray stageCounts = new AtomicLongArray(Stage.values().length);
+    private final AtomicInteger createdViewCount = new AtomicInteger();
+    private final AtomicLong firstContentNanos = new AtomicLong(-1);
+    private volatile long imageCacheHits;
+    private volatile long imageCacheMisses;
+    private volatile long imageCacheEvictions;
+    private volatile long imageCacheSizeKb;
+    private volatile long imageCacheMaxSizeKb;
+
+    /**
+     * Начинает этап в текущем потоке; завершать его нужно в том же потоке через {@link #endStage}
+     */
+    public long beginStage(Stage stage) {
+        Trace.beginSection(stage.traceSectionName);
+        return System.nanoTime();
+    }
+
+    public void endStage(Stage stage, long stageStartNanos) {
+        recordStage(stage, System.nanoTime() - stageStartNanos);
+        Trace.endSection();
+    }
+
+    /**
+     * Учитывает этап, измеренный вне этого класса, например чтение файла в другом Activity
+     */
+    public void recordStage(Stage stage, long durationNanos) {
+        stageNanos.addAndGet(stage.ordinal(), durationNanos);
+        stageCounts.incrementAndGet(stage.ordinal());
+    }
+
+    public void addCreatedViews(int viewCount) {
+        createdViewCount.addAndGet(viewCount);
+    }
+
+    /**
+     * Запоминает время до появления первого содержимого на экране (учитывается только первый вызов)
+     */
+    public void recordFirstContent(long durationNanos) {
+        firstContentNanos.compareAndSet(-1, durationNanos);
+    }
+
+    public void setImageCacheStats(long hits, long misses, long evictions, long sizeKb, long maxSizeKb) {
+        imageCacheHits = hits;
+        imageCacheMisses = misses;
+        imageCacheEvictions = evictions;
+        imageCacheSizeKb = sizeKb;
+        imageCacheMaxSizeKb = maxSizeKb;
+    }
+
+    public long getStageNanos(Stage stage) {
+        return stageNanos.get(stage.ordinal());
+    }
+
+    public long getStageCount(Stage stage) {
+        return stageCounts.get(stage.ordinal());
+    }
+
+    public int getCreatedViewCount() {
+        return createdViewCount.get();
+    }
+
+    public void reset() {
+        for (int stageIndex = 0; stageIndex < stageNanos.length(); stageIndex++) {
+            stageNanos.set(stageIndex, 0);
+            stageCounts.set(stageIndex, 0);
+        }
+        createdViewCount.set(0);
+        firstContentNanos.set(-1);
+    }
+
+    /**
+     * Многострочная сводка для отладочного оверлея
+     */
+    public String formatSummary(int liveViewCount) {
+        StringBuilder summary = new StringBuilder();
+        for (Stage stage : Stage.values()) {
+            summary.append(String.format(Locale.US, "%-13s %8.1f ms ×%d%n",
+                    stage.name().toLowerCase(Locale.US),
+                    stageNanos.get(stage.ordinal()) / 1e6,
+                    stageCounts.get(stage.ordinal())));
+        }
+        long firstContent = firstContentNanos.get();
+        if (firstContent >= 0) {
+            summary.append(String.format(Locale.US, "first content %8.1f ms%n", firstContent / 1e6));
+        }
+        summary.append("views: created ").append(createdViewCount.get())
+                .append(", live ").append(liveViewCount).append('\n');
+        summary.append("images: hit ").append(imageCacheHits)
+                .append(", miss ").append(imageCacheMisses)
+                .append(", evict ").append(imageCacheEvictions).append('\n');
+        summary.append("image cache: ").append(imageCacheSizeKb)
+                .append('/').append(imageCacheMaxSizeKb).append(" KB");
+        return summary.toString();
+    }
+
+    /**
+     * Пишет одну строку key=value в logcat, чтобы её было удобно разбирать скриптами
+     */
+    public void logSummary(String documentLabel, int liveViewCount) {
+        StringBuilder line = new StringBuilder("render_metrics doc=").append(documentLabel);
+        for (Stage stage : Stage.values()) {
+            String stageKey = stage.name().toLowerCase(Locale.US);
+            line.append(' ').append(stageKey).append("_ms=")
+                    .append(String.format(Locale.US, "%.2f", stageNanos.get(stage.ordinal()) / 1e6));
+            line.append(' ').append(stageKey).append("_count=").append(stageCounts.get(stage.ordinal()));
+        }
+        line.append(" first_content_ms=")
+                .append(String.format(Locale.US, "%.2f", firstContentNanos.get() / 1e6));
+        line.append(" views_created=").append(createdViewCount.get());
+        line.append(" views_live=").append(liveViewCount);
+        line.append(" image_cache_hits=").append(imageCacheHits);
+        line.append(" image_cache_misses=").append(imageCacheMisses);
+        line.append(" image_cache_evictions=").append(imageCacheEvictions);
+        line.append(" image_cache_kb=").append(imageCacheSizeKb);
+        line.append(" heap_used_kb=").append(
+                (Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory()) / 1024);
+        Log.i(LOG_TAG, line.toString());
+    }
+}
@@ -0,0 +1,104 @@
+package com.example.markdowneditor;
+
+import android.graphics.Color;
+import android.text.Spannable;
+import android.text.SpannableString;
+import android.text.style.BackgroundColorSpan;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.TextView;
+
+import java.util.List;
+
+/**
+ * Подсвечивает совпадения поиска в View блока. Позиции совпадений берутся из
+ * {@link DocumentSearchIndex} и отсчитываются по тексту всех TextView блока по порядку,
+ * разделённых одним символом, как в {@link MarkdownBlock#getPlainText()}.
+ */
+public class SearchHighlighter {
+    private static final int MATCH_COLOR = Color.parseColor("#fff59d");
+    private static final int CURRENT_MATCH_COLOR = Color.parseColor("#ffb74d");
+
+    private static class SearchHighlightSpan extends BackgroundColorSpan {
+        SearchHighlightSpan(int color) {
+            super(color);
+        }
+    }
+
+    private SearchHighlighter() {
+    }
+
+    public static void highlight(View blockView,
+                                 List<DocumentSearchIndex.Match> blockMatches,
+                                 DocumentSearchIndex.Match currentMatch) {
+        applyToTextViews(blockView, 0, blockMatches, currentMatch);
+    }
+
+    public static void clear(View blockView) {
+        applyToTextViews(blockView, 0, null, null);
+    }
+
+    private static int applyToTextViews(View view, int textOffset,
+                                        List<DocumentSearchIndex.Match> blockMatches,
+                                        DocumentSearchIndex.Match currentMatch) {
+        if (view instanceof TextView) {
+            TextView textView = (TextView) view;
+            CharSequence currentText = textView.getText();
+            highlightTextView(textView, textOffset, blockMatches, currentMatch);
+            return textOffset + currentText.length() + 1;
+        }
+        if (view instanceof ViewGroup) {
+            ViewGroup viewGroup = (ViewGroup) view;
+            for (int childIndex = 0; childIndex < viewGroup.getChildCount(); childIndex++) {
+                textOffset = applyToTextViews(viewGroup.getChildAt(childIndex), textOffset,
+                        blockMatches, currentMatch);
+            }
+        }
+        return textOffset;
+    }
+
+    private static void highlightTextView(TextView textView, int textOffset,
+                                          List<DocumentSearchIndex.Match> blockMatches,
+                                          DocumentSearchIndex.Match currentMatch) {
+        CharSequence currentText = textView.getText();
+        boolean hasOldHighlights = currentText instanceof Spannable
+                && ((Spannable) currentText).getSpans(0, currentText.length(), SearchHighlightSpan.class).length > 0;
+        boolean hasNewHighlights = false;
+        if (blockMatches != null) {
+            for (DocumentSearchIndex.Match match : blockMatches) {
+                if (match.end > textOffset && match.start < textOffset + currentText.length()) {
+                    hasNewHighlights = true;
+                    break;
+                }
+            }
+        }
+        if (!hasOldHighlights && !hasNewHighlights) {
+            return;
+        }
+
+        Spannable highlightedText = currentText instanceof Spannable
+                ? (Spannable) currentText
+                : new SpannableString(currentText);
+        for (SearchHighlightSpan oldSpan : highlightedText.getSpans(
+                0, highlightedText.length(), SearchHighlightSpan.class)) {
+            highlightedText.removeSpan(oldSpan);
+        }
+
+        if (hasNewHighlights) {
+            for (DocumentSearchIndex.Match match : blockMatches) {
+                int spanStart = Math.max(match.start - textOffset, 0);
+                int spanEnd = Math.min(match.end - textOffset, highlightedText.length());
+                if (spanStart >= spanEnd) {
+                    continue;
+                }
+                int highlightColor = match == currentMatch ? CURRENT_MATCH_COLOR : MATCH_COLOR;
+                highlightedText.setSpan(new SearchHighlightSpan(highlightColor),
+                        spanStart, spanEnd, Spannable.SPAN_EXCLUSIVE_EXCLUSIVE);
+            }
+        }
+
+        if (highlightedText != currentText) {
+            textView.setText(highlightedText, TextView.BufferType.SPANNABLE);
+        }
+    }
+}
@@ -0,0 +1,702 @@
+package com.example.markdowneditor;
+
+import android.util.DisplayMetrics;
+import android.view.Choreographer;
+import android.view.View;
+import android.view.ViewTreeObserver;
+import android.widget.LinearLayout;
+import android.widget.ScrollView;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Отрисовывает документ по секциям оглавления: View создаются только для секций рядом с видимой
+ * областью, остальные секции представлены пустыми контейнерами с оценочной высотой.
+ * Далёкие от видимой области секции освобождаются, сохраняя свою фактическую высоту.
+ * <p>
+ * Длинные секции дробятся на части не более {@link #MAX_BLOCKS_PER_UNIT} блоков, а View создаются
+ * в обратных вызовах {@link Choreographer} порциями, укладывающимися в бюджет кадра,
+ * начиная с частей, попадающих в видимую область.
+ * <p>
+ * Число частей ограничено {@link #MAX_UNIT_COUNT}: в очень больших документах части укрупняются,
+ * а короткие соседние секции объединяются, чтобы число пустых контейнеров не росло с размером файла.
+ * <p>
+ * Пустые контейнеры тоже создаются не сразу: при показе документа создаётся только контейнер
+ * начальной части, а части выше и ниже неё представлены двумя распорками с оценочной высотой.
+ * Остальные контейнеры добавляются в тех же обратных вызовах {@link Choreographer}, после создания
+ * видимых View, и каждый забирает у распорки ровно свою оценочную высоту, так что прокрутка не сдвигается.
+ * Высоты блоков оцениваются заранее, в фоне (см. {@link #estimateBlockHeights}).
+ * Блоки документа, ещё не разобранные в фоне, не разбираются в кадре (см. {@link MarkdownDocument#prepareBlock}).
+ */
+public class SectionedDocumentRenderer implements ViewTreeObserver.OnScrollChangedListener,
+        Choreographer.FrameCallback {
+    private static final float MATERIALIZE_AHEAD_VIEWPORTS = 1f;
+    private static final float RELEASE_BEYOND_VIEWPORTS = 5f;
+    private static final int MAX_BLOCKS_PER_UNIT = 32;
+    private static final int MAX_UNIT_COUNT = 2048;
+    private static final int MAX_SYNC_JUMP_BLOCKS = MAX_BLOCKS_PER_UNIT;
+    private static final long FRAME_BUDGET_NANOS = 8_000_000L;
+
+    /**
+     * Уведомление о создании View блока, например чтобы заново применить подсветку поиска
+     */
+    public interface BlockViewListener {
+        void onBlockViewCreated(int blockIndex, View blockView);
+    }
+
+    /**
+     * Позиция прокрутки, привязанная к блоку, а не к пикселям, чтобы пережить пересоздание View
+     */
+    public static final class ScrollAnchor {
+        public final int blockIndex;
+        public final int offsetPixels;
+
+        ScrollAnchor(int blockIndex, int offsetPixels) {
+            this.blockIndex = blockIndex;
+            this.offsetPixels = offsetPixels;
+        }
+    }
+
+    private final ScrollView scrollView;
+    private final LinearLayout container;
+    private final MarkdownParser parser;
+    private final Choreographer choreographer = Choreographer.getInstance();
+    private final Set<Integer> materializedUnits = new LinkedHashSet<>();
+    private final Deque<Integer> pendingUnits = new ArrayDeque<>();
+    private BlockViewListener blockViewListener;
+    private boolean isFrameCallbackPosted;
+
+    private MarkdownDocument document;
+    private DocumentOutline outline;
+    private int[] unitStartBlocks = new int[0];
+    private int[] unitHeightsBeforeMaterializing = new int[0];
+    private int[] unitNextBlocks = new int[0];
+    private LinearLayout[] unitViews = new LinearLayout[0];
+    private View[] blockViews = new View[0];
+    private View leadingSpacer;
+    private View trailingSpacer;
+    // Контейнеры созданы для частей [firstPlaceholderUnit, placeholderUnitEnd)
+    private int firstPlaceholderUnit;
+    private int placeholderUnitEnd;
+    private int estimatedLineHeight;
+    private int estimatedDefaultBlockHeight;
+    // Переход к блоку, который ещё не создан: выполняется, когда очередь дойдёт до блока
+    private int pendingJumpBlock = -1;
+    private int pendingJumpOffsetPixels;
+    private boolean isPendingJumpSmooth;
+
+    public SectionedDocumentRenderer(ScrollView scrollView, LinearLayout container, MarkdownParser parser) {
+        this.scrollView = scrollView;
+        this.container = container;
+        this.parser = parser;
+        scrollView.getViewTreeObserver().addOnScrollChangedListener(this);
+    }
+
+    public void setBlockViewListener(BlockViewListener listener) {
+        this.blockViewListener = listener;
+    }
+
+    /**
+     * Показывает документ, начиная отрисовку с блока с указанным индексом, прокрученного
+     * на initialOffsetPixels от его верхнего края. Незавершённая отрисовка предыдущего документа отменяется.
+     */
+    public void showDocument(MarkdownDocument newDocument, int initialBlockIndex, int initialOffsetPixels) {
+        cancelPendingRendering();
+        container.removeAllViews();
+        materializedUnits.clear();
+        document = newDocument;
+        outline = newDocument.getOutline();
+        blockViews = new View[newDocument.getBlocks().size()];
+        unitStartBlocks = splitIntoUnits(outline, blockViews.length);
+        unitHeightsBeforeMaterializing = new int[unitStartBlocks.length];
+        unitNextBlocks = new int[unitStartBlocks.length];
+        unitViews = new LinearLayout[unitStartBlocks.length];
+
+        DisplayMetrics displayMetrics = getDisplayMetrics();
+        estimatedLineHeight = estimateTextHeight("", 16, displayMetrics.widthPixels, displayMetrics);
+        estimatedDefaultBlockHeight = estimatedLineHeight + (int) (8 * displayMetrics.density);
+
+        int initialBlock = Math.max(0, Math.min(initialBlockIndex, blockViews.length - 1));
+        int initialUnit = findUnitForBlock(initialBlock);
+        firstPlaceholderUnit = initialUnit;
+        placeholderUnitEnd = initialUnit;
+        leadingSpacer = createSpacer();
+        trailingSpacer = createSpacer();
+        container.addView(leadingSpacer);
+        container.addView(trailingSpacer);
+        addPlaceholderBelow();
+        updateSpacerHeights();
+
+        if (initialBlockIndex > 0 || initialOffsetPixels > 0) {
+            scrollToBlock(initialBlock, false, initialOffsetPixels);
+        } else {
+            scrollView.scrollTo(0, 0);
+            requestUnit(0, true);
+            renderPendingUnits(System.nanoTime() + FRAME_BUDGET_NANOS);
+            runAfterLayout(this::updateVisibleSections);
+        }
+    }
+
+    public MarkdownDocument getDocument() {
+        return document;
+    }
+
+    /**
+     * Возвращает View блока или null, если блок сейчас не отрисован
+     */
+    public View getBlockView(int blockIndex) {
+        return blockIndex >= 0 && blockIndex < blockViews.length ? blockViews[blockIndex] : null;
+    }
+
+    public void scrollToSection(int sectionIndex) {
+        if (document == null) {
+            return;
+        }
+        scrollToBlock(outline.getSectionStartBlock(sectionIndex), false);
+    }
+
+    /**
+     * Прокручивает к блоку. Часть документа с этим блоком отрисовывается сразу, вне бюджета кадра,
+     * но только до самого блока и не больше {@link #MAX_SYNC_JUMP_BLOCKS} View: в очень больших
+     * документах части укрупняются. Если блок лежит в части глубже, прокрутка сначала идёт
+     * к его оценочной позиции, а точно выставляется, когда блок будет создан в очереди кадров.
+     */
+    public void scrollToBlock(int blockIndex, boolean smoothScroll) {
+        scrollToBlock(blockIndex, smoothScroll, 0);
+    }
+
+    private void scrollToBlock(int blockIndex, boolean smoothScroll, int offsetPixels) {
+        if (document == null || blockIndex < 0 || blockIndex >= blockViews.length) {
+            return;
+        }
+
+        int unitIndex = findUnitForBlock(blockIndex);
+        ensurePlaceholder(unitIndex);
+        requestUnit(unitIndex, true);
+        pendingJumpBlock = -1;
+        renderUnitUntilBlock(unitIndex, blockIndex);
+        if (blockViews[blockIndex] != null) {
+            scrollToCreatedBlock(blockIndex, smoothScroll, offsetPixels);
+            return;
+        }
+
+        pendingJumpBlock = blockIndex;
+        pendingJumpOffsetPixels = offsetPixels;
+        isPendingJumpSmooth = smoothScroll;
+        MarkdownDocument targetDocument = document;
+        runAfterLayout(() -> {
+            if (document != targetDocument || pendingJumpBlock != blockIndex) {
+                return;
+            }
+            int estimatedOffsetInUnit = estimateHeightBeforeBlock(blockIndex)
+                    - estimateHeightBeforeBlock(unitStartBlocks[unitIndex]);
+            scrollToPosition(unitViews[unitIndex].getTop() + estimatedOffsetInUnit + offsetPixels, smoothScroll);
+            updateVisibleSections();
+        });
+    }
+
+    private void scrollToCreatedBlock(int blockIndex, boolean smoothScroll, int offsetPixels) {
+        MarkdownDocument targetDocument = document;
+        int unitIndex = findUnitForBlock(blockIndex);
+        runAfterLayout(() -> {
+            if (document != targetDocument || blockViews[blockIndex] == null) {
+                return;
+            }
+            View blockView = blockViews[blockIndex];
+            scrollToPosition(unitViews[unitIndex].getTop() + blockView.getTop() + offsetPixels, smoothScroll);
+            updateVisibleSections();
+        });
+    }
+
+    private void scrollToPosition(int targetScrollY, boolean smoothScroll) {
+        if (smoothScroll) {
+            scrollView.smoothScrollTo(0, targetScrollY);
+        } else {
+            scrollView.scrollTo(0, targetScrollY);
+        }
+    }
+
+    /**
+     * Определяет первый видимый блок и смещение прокрутки относительно его верхнего края
+     */
+    public ScrollAnchor captureScrollAnchor() {
+        if (document == null || unitViews.length == 0) {
+            return new ScrollAnchor(0, 0);
+        }
+
+        int scrollY = scrollView.getScrollY();
+        int unitIndex = findFirstUnitEndingBelow(scrollY);
+        LinearLayout unitView = unitViews[unitIndex];
+        int unitStartBlock = unitStartBlocks[unitIndex];
+        for (int blockIndex = unitStartBlock; blockIndex < getUnitEndBlock(unitIndex); blockIndex++) {
+            View blockView = blockViews[blockIndex];
+            if (blockView != null && unitView.getTop() + blockView.getBottom() > scrollY) {
+                return new ScrollAnchor(blockIndex, scrollY - unitView.getTop() - blockView.getTop());
+            }
+        }
+        return new ScrollAnchor(unitStartBlock, Math.max(0, scrollY - unitView.getTop()));
+    }
+
+    @Override
+    public void onScrollChanged() {
+        updateVisibleSections();
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        isFrameCallbackPosted = false;
+        long deadlineNanos = System.nanoTime() + FRAME_BUDGET_NANOS;
+        renderPendingUnits(deadlineNanos);
+        addPendingPlaceholders(deadlineNanos);
+    }
+
+    public void release() {
+        cancelPendingRendering();
+        if (scrollView.getViewTreeObserver().isAlive()) {
+            scrollView.getViewTreeObserver().removeOnScrollChangedListener(this);
+        }
+        container.removeAllViews();
+        materializedUnits.clear();
+        blockViews = new View[0];
+        unitViews = new LinearLayout[0];
+        unitStartBlocks = new int[0];
+        firstPlaceholderUnit = 0;
+        placeholderUnitEnd = 0;
+        leadingSpacer = null;
+        trailingSpacer = null;
+        document = null;
+    }
+
+    /**
+     * Останавливает отложенное создание View, например когда документ будет заменён новым
+     */
+    public void cancelPendingRendering() {
+        pendingUnits.clear();
+        pendingJumpBlock = -1;
+        if (isFrameCallbackPosted) {
+            choreographer.removeFrameCallback(this);
+            isFrameCallbackPosted = false;
+        }
+    }
+
+    private void updateVisibleSections() {
+        if (document == null || unitViews.length == 0) {
+            return;
+        }
+
+        int viewportHeight = scrollView.getHeight() > 0
+                ? scrollView.getHeight()
+                : getDisplayMetrics().heightPixels;
+        int viewportTop = scrollView.getScrollY();
+        int viewportBottom = viewportTop + viewportHeight;
+        int materializeTop = viewportTop - (int) (viewportHeight * MATERIALIZE_AHEAD_VIEWPORTS);
+        int materializeBottom = viewportBottom + (int) (viewportHeight * MATERIALIZE_AHEAD_VIEWPORTS);
+
+        for (int unitIndex = findFirstUnitEndingBelow(materializeTop);
+             unitIndex < placeholderUnitEnd && unitViews[unitIndex].getTop() <= materializeBottom;
+             unitIndex++) {
+            LinearLayout unitView = unitViews[unitIndex];
+            boolean isVisible = unitView.getBottom() >= viewportTop && unitView.getTop() <= viewportBottom;
+            requestUnit(unitIndex, isVisible);
+        }
+
+        int releaseTop = viewportTop - (int) (viewportHeight * RELEASE_BEYOND_VIEWPORTS);
+        int releaseBottom = viewportBottom + (int) (viewportHeight * RELEASE_BEYOND_VIEWPORTS);
+        List<Integer> unitsToRelease = new ArrayList<>();
+        for (int unitIndex : materializedUnits) {
+            LinearLayout unitView = unitViews[unitIndex];
+            if (unitView.getBottom() < releaseTop || unitView.getTop() > releaseBottom) {
+                unitsToRelease.add(unitIndex);
+            }
+        }
+        for (int unitIndex : unitsToRelease) {
+            releaseUnit(unitIndex);
+        }
+
+        scheduleFrameIfPending();
+    }
+
+    /**
+     * Ищет только среди созданных контейнеров; позиция в области распорки даёт крайний из них
+     */
+    private int findFirstUnitEndingBelow(int position) {
+        int low = firstPlaceholderUnit;
+        int high = placeholderUnitEnd - 1;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (unitViews[middle].getBottom() < position) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Ставит часть документа в очередь отрисовки; видимые части обрабатываются первыми
+     */
+    private void requestUnit(int unitIndex, boolean isVisible) {
+        if (!materializedUnits.add(unitIndex)) {
+            if (isVisible && pendingUnits.remove(unitIndex)) {
+                pendingUnits.addFirst(unitIndex);
+            }
+            return;
+        }
+
+        LinearLayout unitView = unitViews[unitIndex];
+        unitHeightsBeforeMaterializing[unitIndex] = unitView.getHeight();
+        unitNextBlocks[unitIndex] = unitStartBlocks[unitIndex];
+        if (isVisible) {
+            pendingUnits.addFirst(unitIndex);
+        } else {
+            pendingUnits.addLast(unitIndex);
+        }
+    }
+
+    /**
+     * Создаёт View из очереди, пока не истечёт бюджет кадра; остаток переносится на следующий кадр
+     */
+    private void renderPendingUnits(long deadlineNanos) {
+        while (!pendingUnits.isEmpty() && System.nanoTime() < deadlineNanos) {
+            int unitIndex = pendingUnits.peekFirst();
+            if (!isNextBlockReady(unitIndex)) {
+                break;
+            }
+            if (createNextBlockView(unitIndex)) {
+                pendingUnits.pollFirst();
+            }
+        }
+        scheduleFrameIfPending();
+    }
+
+    /**
+     * Создаёт View части до указанного блока включительно, но не больше {@link #MAX_SYNC_JUMP_BLOCKS};
+     * остаток части остаётся первым в очереди
+     */
+    private void renderUnitUntilBlock(int unitIndex, int blockIndex) {
+        int createdCount = 0;
+        while (blockViews[blockIndex] == null && createdCount < MAX_SYNC_JUMP_BLOCKS
+                && pendingUnits.contains(unitIndex) && isNextBlockReady(unitIndex)) {
+            if (createNextBlockView(unitIndex)) {
+                pendingUnits.remove(unitIndex);
+            }
+            createdCount++;
+        }
+        scheduleFrameIfPending();
+    }
+
+    /**
+     * Можно ли создать View следующего блока части, не разбирая текст в главном потоке.
+     * Пока окно документа разбирается в фоне, создание View переносится на следующий кадр.
+     */
+    private boolean isNextBlockReady(int unitIndex) {
+        int blockIndex = unitNextBlocks[unitIndex];
+        return blockIndex >= getUnitEndBlock(unitIndex) || document.prepareBlock(blockIndex);
+    }
+
+    /**
+     * Создаёт View следующего блока части и возвращает true, если часть отрисована полностью
+     */
+    private boolean createNextBlockView(int unitIndex) {
+        int unitEndBlock = getUnitEndBlock(unitIndex);
+        int blockIndex = unitNextBlocks[unitIndex];
+        if (blockIndex < unitEndBlock) {
+            View blockView = parser.createBlockView(document.getBlocks().get(blockIndex));
+            blockViews[blockIndex] = blockView;
+            unitViews[unitIndex].addView(blockView);
+            unitNextBlocks[unitIndex] = ++blockIndex;
+            if (blockViewListener != null) {
+                blockViewListener.onBlockViewCreated(blockIndex - 1, blockView);
+            }
+            if (blockIndex - 1 == pendingJumpBlock) {
+                pendingJumpBlock = -1;
+                scrollToCreatedBlock(blockIndex - 1, isPendingJumpSmooth, pendingJumpOffsetPixels);
+            }
+        }
+        if (blockIndex < unitEndBlock) {
+            return false;
+        }
+
+        finishUnit(unitIndex);
+        return true;
+    }
+
+    private void finishUnit(int unitIndex) {
+        LinearLayout unitView = unitViews[unitIndex];
+        int heightBeforeMaterializing = unitHeightsBeforeMaterializing[unitIndex];
+        boolean isAboveViewport = heightBeforeMaterializing > 0
+                && unitView.getBottom() <= scrollView.getScrollY();
+        unitView.setMinimumHeight(0);
+
+        if (isAboveViewport) {
+            unitView.addOnLayoutChangeListener(new View.OnLayoutChangeListener() {
+                @Override
+                public void onLayoutChange(View view, int left, int top, int right, int bottom,
+                                           int oldLeft, int oldTop, int oldRight, int oldBottom) {
+                    view.removeOnLayoutChangeListener(this);
+                    int heightDelta = (bottom - top) - heightBeforeMaterializing;
+                    if (heightDelta != 0) {
+                        scrollView.scrollBy(0, heightDelta);
+                    }
+                }
+            });
+        }
+    }
+
+    private void releaseUnit(int unitIndex) {
+        if (!materializedUnits.remove(unitIndex)) {
+            return;
+        }
+
+        LinearLayout unitView = unitViews[unitIndex];
+        if (pendingUnits.remove(unitIndex)) {
+            unitView.setMinimumHeight(Math.max(unitView.getHeight(), estimateUnitHeight(unitIndex)));
+        } else {
+            unitView.setMinimumHeight(unitView.getHeight());
+        }
+        unitView.removeAllViews();
+        for (int blockIndex = unitStartBlocks[unitIndex]; blockIndex < getUnitEndBlock(unitIndex); blockIndex++) {
+            blockViews[blockIndex] = null;
+        }
+        if (pendingJumpBlock >= unitStartBlocks[unitIndex] && pendingJumpBlock < getUnitEndBlock(unitIndex)) {
+            pendingJumpBlock = -1;
+        }
+    }
+
+    /**
+     * Создаёт недостающие контейнеры частей, пока не истечёт бюджет кадра: сначала ниже начальной
+     * части, затем выше. Новые контейнеры могут попасть в окрестность видимой области,
+     * поэтому после разметки видимые части пересчитываются.
+     */
+    private void addPendingPlaceholders(long deadlineNanos) {
+        boolean isPlaceholderAdded = false;
+        while (hasPendingPlaceholders() && System.nanoTime() < deadlineNanos) {
+            if (placeholderUnitEnd < unitViews.length) {
+                addPlaceholderBelow();
+            } else {
+                addPlaceholderAbove();
+            }
+            isPlaceholderAdded = true;
+        }
+        if (isPlaceholderAdded) {
+            updateSpacerHeights();
+            runAfterLayout(this::updateVisibleSections);
+        }
+        scheduleFrameIfPending();
+    }
+
+    /**
+     * Создаёт все контейнеры между уже созданными и указанной частью, например для перехода к секции
+     */
+    private void ensurePlaceholder(int unitIndex) {
+        if (unitIndex >= firstPlaceholderUnit && unitIndex < placeholderUnitEnd) {
+            return;
+        }
+        while (unitIndex >= placeholderUnitEnd) {
+            addPlaceholderBelow();
+        }
+        while (unitIndex < firstPlaceholderUnit) {
+            addPlaceholderAbove();
+        }
+        updateSpacerHeights();
+    }
+
+    private boolean hasPendingPlaceholders() {
+        return firstPlaceholderUnit > 0 || placeholderUnitEnd < unitViews.length;
+    }
+
+    private void addPlaceholderBelow() {
+        addPlaceholder(placeholderUnitEnd, container.indexOfChild(trailingSpacer));
+        placeholderUnitEnd++;
+    }
+
+    private void addPlaceholderAbove() {
+        firstPlaceholderUnit--;
+        addPlaceholder(firstPlaceholderUnit, container.indexOfChild(leadingSpacer) + 1);
+    }
+
+    private void addPlaceholder(int unitIndex, int childIndex) {
+        LinearLayout unitView = new LinearLayout(container.getContext());
+        unitView.setOrientation(LinearLayout.VERTICAL);
+        unitView.setLayoutParams(new LinearLayout.LayoutParams(
+                LinearLayout.LayoutParams.MATCH_PARENT,
+                LinearLayout.LayoutParams.WRAP_CONTENT));
+        unitView.setMinimumHeight(estimateUnitHeight(unitIndex));
+        unitViews[unitIndex] = unitView;
+        container.addView(unitView, childIndex);
+    }
+
+    private View createSpacer() {
+        View spacer = new View(container.getContext());
+        spacer.setLayoutParams(new LinearLayout.LayoutParams(LinearLayout.LayoutParams.MATCH_PARENT, 0));
+        return spacer;
+    }
+
+    /**
+     * Распорки занимают оценочную высоту ещё не созданных частей. Оценка аддитивна, поэтому
+     * контейнер, созданный на месте распорки, не меняет общую высоту документа.
+     */
+    private void updateSpacerHeights() {
+        setSpacerHeight(leadingSpacer, estimateHeightBeforeBlock(unitStartBlocks[firstPlaceholderUnit]));
+        int trailingStartBlock = placeholderUnitEnd < unitStartBlocks.length
+                ? unitStartBlocks[placeholderUnitEnd]
+                : blockViews.length;
+        setSpacerHeight(trailingSpacer, estimateHeightBeforeBlock(blockViews.length)
+                - estimateHeightBeforeBlock(trailingStartBlock));
+    }
+
+    private static void setSpacerHeight(View spacer, int height) {
+        LinearLayout.LayoutParams layoutParams = (LinearLayout.LayoutParams) spacer.getLayoutParams();
+        if (layoutParams.height != height) {
+            layoutParams.height = height;
+            spacer.setLayoutParams(layoutParams);
+        }
+    }
+
+    private void scheduleFrameIfPending() {
+        if ((!pendingUnits.isEmpty() || hasPendingPlaceholders()) && !isFrameCallbackPosted) {
+            choreographer.postFrameCallback(this);
+            isFrameCallbackPosted = true;
+        }
+    }
+
+    /**
+     * Делит документ на части: каждая секция оглавления начинает новую часть, если предыдущая
+     * часть уже не слишком мала, а длинные секции дробятся на части ограниченного размера.
+     * <p>
+     * Слишком малой считается часть короче minUnitBlocks. Так все части, кроме последней, содержат
+     * не меньше minUnitBlocks блоков, и при minUnitBlocks = ⌈blockCount / (MAX_UNIT_COUNT - 1)⌉
+     * частей получается не больше {@link #MAX_UNIT_COUNT}, сколько бы в документе ни было заголовков.
+     */
+    private static int[] splitIntoUnits(DocumentOutline outline, int blockCount) {
+        int minUnitBlocks = Math.max(1, (blockCount + MAX_UNIT_COUNT - 2) / (MAX_UNIT_COUNT - 1));
+        int blocksPerUnit = Math.max(MAX_BLOCKS_PER_UNIT, minUnitBlocks);
+        int[] unitStarts = new int[Math.max(1, Math.min(outline.getSectionCount(), MAX_UNIT_COUNT)
+                + blockCount / blocksPerUnit)];
+        int unitCount = 0;
+        for (int sectionIndex = 0; sectionIndex < outline.getSectionCount(); sectionIndex++) {
+            int sectionEndBlock = outline.getSectionEndBlock(sectionIndex);
+            int unitStart = outline.getSectionStartBlock(sectionIndex);
+            if (unitCount > 0 && unitStart - unitStarts[unitCount - 1] < minUnitBlocks) {
+                unitStart = unitStarts[--unitCount];
+            }
+            do {
+                if (unitCount == unitStarts.length) {
+                    unitStarts = Arrays.copyOf(unitStarts, unitCount * 2);
+                }
+                unitStarts[unitCount++] = unitStart;
+                unitStart += blocksPerUnit;
+            } while (unitStart < sectionEndBlock);
+        }
+        return Arrays.copyOf(unitStarts, unitCount);
+    }
+
+    private int getUnitEndBlock(int unitIndex) {
+        return unitIndex + 1 < unitStartBlocks.length ? unitStartBlocks[unitIndex + 1] : blockViews.length;
+    }
+
+    private int findUnitForBlock(int blockIndex) {
+        int unitIndex = Arrays.binarySearch(unitStartBlocks, blockIndex);
+        return unitIndex >= 0 ? unitIndex : -unitIndex - 2;
+    }
+
+    private void runAfterLayout(Runnable action) {
+        if (!container.isLayoutRequested() && container.getHeight() > 0) {
+            action.run();
+            return;
+        }
+        container.getViewTreeObserver().addOnGlobalLayoutListener(
+                new ViewTreeObserver.OnGlobalLayoutListener() {
+                    @Override
+                    public void onGlobalLayout() {
+                        container.getViewTreeObserver().removeOnGlobalLayoutListener(this);
+                        action.run();
+                    }
+                });
+    }
+
+    private int estimateUnitHeight(int unitIndex) {
+        return estimateHeightBeforeBlock(getUnitEndBlock(unitIndex))
+                - estimateHeightBeforeBlock(unitStartBlocks[unitIndex]);
+    }
+
+    /**
+     * Оценочная высота всех блоков до указанного. Высота любого диапазона блоков считается
+     * как разность двух таких значений, поэтому суммы по частям и по распоркам всегда сходятся.
+     */
+    private int estimateHeightBeforeBlock(int blockIndex) {
+        if (document instanceof MappedMarkdownDocument) {
+            // Оценка без разбора окон: по номеру строки исходного текста, на которую приходится блок
+            double sourceLineIndex = ((MappedMarkdownDocument) document).estimateSourceLineIndex(blockIndex);
+            return (int) Math.min(Integer.MAX_VALUE, Math.round(sourceLineIndex * estimatedLineHeight));
+        }
+        if (document.hasEstimatedBlockHeights()) {
+            return (int) Math.min(Integer.MAX_VALUE, document.getEstimatedHeight(0, blockIndex));
+        }
+        // Документ разобран без оценок высоты: одна строка текста на блок
+        return (int) Math.min(Integer.MAX_VALUE, (long) blockIndex * estimatedDefaultBlockHeight);
+    }
+
+    /**
+     * Грубые оценки высоты блоков по числу строк текста для {@link MarkdownDocument#setEstimatedBlockHeights}.
+     * Вызывается в фоне после разбора, поэтому ширина берётся по экрану, а не по контейнеру.
+     * Точность нужна лишь для полосы прокрутки и перехода к секции, фактическая высота
+     * подставляется после отрисовки.
+     */
+    static int[] estimateBlockHeights(List<MarkdownBlock> blocks, DisplayMetrics displayMetrics) {
+        int[] blockHeights = new int[blocks.size()];
+        for (int blockIndex = 0; blockIndex < blockHeights.length; blockIndex++) {
+            blockHeights[blockIndex] = estimateBlockHeight(blocks.get(blockIndex),
+                    displayMetrics.widthPixels, displayMetrics);
+        }
+        return blockHeights;
+    }
+
+    private static int estimateBlockHeight(MarkdownBlock block, int availableWidth, DisplayMetrics displayMetrics) {
+        switch (block.getType()) {
+            case HEADING:
+                return estimateTextHeight(block.getPlainText(), 24 - block.getHeadingLevel() * 2,
+                        availableWidth, displayMetrics) + (int) (12 * displayMetrics.density);
+            case CODE_BLOCK:
+                return estimateTextHeight(block.getPlainText(), 14, availableWidth, displayMetrics)
+                        + (int) (16 * displayMetrics.density);
+            case TABLE:
+                return block.getTableRows().size()
+                        * (estimateTextHeight("", 16, availableWidth, displayMetrics)
+                        + (int) (8 * displayMetrics.density));
+            case IMAGE:
+                return (int) (200 * displayMetrics.density);
+            default:
+                return estimateTextHeight(block.getPlainText(), 16, availableWidth, displayMetrics)
+                        + (int) (8 * displayMetrics.density);
+        }
+    }
+
+    private static int estimateTextHeight(String text, int textSizeSp, int availableWidth,
+                                          DisplayMetrics displayMetrics) {
+        float textSizePixels = textSizeSp * displayMetrics.scaledDensity;
+        int charactersPerLine = Math.max(20, (int) (availableWidth / (textSizePixels * 0.55f)));
+        int lineCount = 0;
+        int lineStart = 0;
+        while (lineStart <= text.length()) {
+            int lineEnd = text.indexOf('\n', lineStart);
+            if (lineEnd == -1) {
+                lineEnd = text.length();
+            }
+            lineCount += Math.max(1, (lineEnd - lineStart + charactersPerLine - 1) / charactersPerLine);
+            lineStart = lineEnd + 1;
+        }
+        return (int) (lineCount * textSizePixels * 1.2f);
+    }
+
+    private DisplayMetrics getDisplayMetrics() {
+        return container.getResources().getDisplayMetrics();
+    }
+}
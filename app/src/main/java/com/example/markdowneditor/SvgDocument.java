@@ -0,0 +1,266 @@
+package com.example.markdowneditor;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.LinearGradient;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.graphics.RectF;
+import android.graphics.Shader;
+import android.graphics.Typeface;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Разобранное SVG-изображение (см. {@link SvgParser}). Хранит векторное описание, поэтому его можно
+ * растеризовать в любом размере без повторной загрузки. Поддерживается подмножество, которого
+ * хватает для бейджей и простых диаграмм: группы с трансформациями, прямоугольники, окружности,
+ * эллипсы, линии, ломаные, пути, текст, линейные градиенты и обрезка по clipPath/mask.
+ */
+public final class SvgDocument {
+    private static final float DEFAULT_WIDTH = 300;
+    private static final float DEFAULT_HEIGHT = 150;
+
+    private final float width;
+    private final float height;
+    private final RectF viewBox;
+    private final Group root;
+    private final Map<String, Gradient> gradients;
+    private final Map<String, Path> clipPaths;
+
+    SvgDocument(float width, float height, RectF viewBox, Group root,
+                Map<String, Gradient> gradients, Map<String, Path> clipPaths) {
+        float fallbackWidth = viewBox != null ? viewBox.width() : DEFAULT_WIDTH;
+        float fallbackHeight = viewBox != null ? viewBox.height() : DEFAULT_HEIGHT;
+        this.width = width > 0 ? width : fallbackWidth;
+        this.height = height > 0 ? height : fallbackHeight;
+        this.viewBox = viewBox;
+        this.root = root;
+        this.gradients = gradients;
+        this.clipPaths = clipPaths;
+    }
+
+    /**
+     * Собственная ширина изображения в CSS-пикселях
+     */
+    public float getWidth() {
+        return width;
+    }
+
+    public float getHeight() {
+        return height;
+    }
+
+    /**
+     * Растеризует изображение в bitmap заданного размера; безопасно вызывать вне главного потока
+     */
+    public Bitmap rasterize(int widthPixels, int heightPixels) {
+        Bitmap bitmap = Bitmap.createBitmap(Math.max(1, widthPixels), Math.max(1, heightPixels),
+                Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(bitmap);
+        canvas.scale(bitmap.getWidth() / width, bitmap.getHeight() / height);
+        if (viewBox != null && viewBox.width() > 0 && viewBox.height() > 0) {
+            // preserveAspectRatio="xMidYMid meet" по умолчанию
+            float viewBoxScale = Math.min(width / viewBox.width(), height / viewBox.height());
+            canvas.translate((width - viewBox.width() * viewBoxScale) / 2,
+                    (height - viewBox.height() * viewBoxScale) / 2);
+            canvas.scale(viewBoxScale, viewBoxScale);
+            canvas.translate(-viewBox.left, -viewBox.top);
+        }
+        root.draw(canvas, this);
+        return bitmap;
+    }
+
+    /**
+     * Унаследованные и собственные свойства оформления элемента
+     */
+    static final class Style {
+        Integer fillColor = 0xff000000;
+        String fillGradientId;
+        float fillOpacity = 1f;
+        Integer strokeColor;
+        String strokeGradientId;
+        float strokeOpacity = 1f;
+        float strokeWidth = 1f;
+        Paint.Cap strokeCap = Paint.Cap.BUTT;
+        Paint.Join strokeJoin = Paint.Join.MITER;
+        float fontSize = 16f;
+        boolean isBold;
+        String fontFamily;
+        Paint.Align textAlign = Paint.Align.LEFT;
+        // Не наследуются
+        float opacity = 1f;
+        String clipPathId;
+
+        Style inherit() {
+            Style child = new Style();
+            child.fillColor = fillColor;
+            child.fillGradientId = fillGradientId;
+            child.fillOpacity = fillOpacity;
+            child.strokeColor = strokeColor;
+            child.strokeGradientId = strokeGradientId;
+            child.strokeOpacity = strokeOpacity;
+            child.strokeWidth = strokeWidth;
+            child.strokeCap = strokeCap;
+            child.strokeJoin = strokeJoin;
+            child.fontSize = fontSize;
+            child.isBold = isBold;
+            child.fontFamily = fontFamily;
+            child.textAlign = textAlign;
+            return child;
+        }
+
+        boolean hasFill() {
+            return fillColor != null || fillGradientId != null;
+        }
+
+        boolean hasStroke() {
+            return (strokeColor != null || strokeGradientId != null) && strokeWidth > 0;
+        }
+    }
+
+    /**
+     * Линейный градиент; координаты в долях ограничивающего прямоугольника фигуры,
+     * если не указано gradientUnits="userSpaceOnUse"
+     */
+    static final class Gradient {
+        float x1 = 0;
+        float y1 = 0;
+        float x2 = 1;
+        float y2 = 0;
+        boolean isUserSpace;
+        final List<Float> stopOffsets = new ArrayList<>();
+        final List<Integer> stopColors = new ArrayList<>();
+
+        Shader createShader(RectF bounds, float opacity) {
+            int stopCount = stopColors.size();
+            int[] colors = new int[Math.max(2, stopCount)];
+            float[] positions = new float[colors.length];
+            for (int stopIndex = 0; stopIndex < colors.length; stopIndex++) {
+                int sourceIndex = Math.min(stopIndex, stopCount - 1);
+                colors[stopIndex] = stopCount == 0 ? 0 : applyOpacity(stopColors.get(sourceIndex), opacity);
+                positions[stopIndex] = stopCount == 0 ? stopIndex : stopOffsets.get(sourceIndex);
+            }
+            if (isUserSpace) {
+                return new LinearGradient(x1, y1, x2, y2, colors, positions, Shader.TileMode.CLAMP);
+            }
+            return new LinearGradient(
+                    bounds.left + x1 * bounds.width(), bounds.top + y1 * bounds.height(),
+                    bounds.left + x2 * bounds.width(), bounds.top + y2 * bounds.height(),
+                    colors, positions, Shader.TileMode.CLAMP);
+        }
+    }
+
+    abstract static class Node {
+        Matrix transform;
+        Style style;
+
+        final void draw(Canvas canvas, SvgDocument document) {
+            int saveCount = canvas.save();
+            if (transform != null) {
+                canvas.concat(transform);
+            }
+            if (style.clipPathId != null) {
+                Path clipPath = document.clipPaths.get(style.clipPathId);
+                if (clipPath != null) {
+                    canvas.clipPath(clipPath);
+                }
+            }
+            if (style.opacity < 1f) {
+                canvas.saveLayerAlpha(null, Math.round(style.opacity * 255));
+            }
+            drawContent(canvas, document);
+            canvas.restoreToCount(saveCount);
+        }
+
+        abstract void drawContent(Canvas canvas, SvgDocument document);
+    }
+
+    static final class Group extends Node {
+        final List<Node> children = new ArrayList<>();
+
+        @Override
+        void drawContent(Canvas canvas, SvgDocument document) {
+            for (Node child : children) {
+                child.draw(canvas, document);
+            }
+        }
+    }
+
+    static final class Shape extends Node {
+        final Path path;
+
+        Shape(Path path) {
+            this.path = path;
+        }
+
+        @Override
+        void drawContent(Canvas canvas, SvgDocument document) {
+            RectF bounds = new RectF();
+            path.computeBounds(bounds, true);
+            if (style.hasFill()) {
+                Paint fillPaint = document.createPaint(Paint.Style.FILL, style.fillColor,
+                        style.fillGradientId, style.fillOpacity, bounds);
+                canvas.drawPath(path, fillPaint);
+            }
+            if (style.hasStroke()) {
+                Paint strokePaint = document.createPaint(Paint.Style.STROKE, style.strokeColor,
+                        style.strokeGradientId, style.strokeOpacity, bounds);
+                strokePaint.setStrokeWidth(style.strokeWidth);
+                strokePaint.setStrokeCap(style.strokeCap);
+                strokePaint.setStrokeJoin(style.strokeJoin);
+                canvas.drawPath(path, strokePaint);
+            }
+        }
+    }
+
+    static final class Text extends Node {
+        final float x;
+        final float y;
+        final String text;
+
+        Text(float x, float y, String text) {
+            this.x = x;
+            this.y = y;
+            this.text = text;
+        }
+
+        @Override
+        void drawContent(Canvas canvas, SvgDocument document) {
+            if (!style.hasFill() || text.isEmpty()) {
+                return;
+            }
+            Paint textPaint = document.createPaint(Paint.Style.FILL, style.fillColor,
+                    style.fillGradientId, style.fillOpacity, new RectF());
+            textPaint.setTextSize(style.fontSize);
+            textPaint.setTextAlign(style.textAlign);
+            textPaint.setTypeface(Typeface.create(
+                    style.fontFamily != null && style.fontFamily.contains("mono")
+                            ? Typeface.MONOSPACE
+                            : Typeface.SANS_SERIF,
+                    style.isBold ? Typeface.BOLD : Typeface.NORMAL));
+            canvas.drawText(text, x, y, textPaint);
+        }
+    }
+
+    private Paint createPaint(Paint.Style paintStyle, Integer color, String gradientId,
+                              float opacity, RectF bounds) {
+        Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        paint.setStyle(paintStyle);
+        Gradient gradient = gradientId != null ? gradients.get(gradientId) : null;
+        if (gradient != null) {
+            paint.setShader(gradient.createShader(bounds, opacity));
+        } else {
+            paint.setColor(applyOpacity(color != null ? color : 0xff000000, opacity));
+        }
+        return paint;
+    }
+
+    static int applyOpacity(int color, float opacity) {
+        int alpha = Math.round(((color >>> 24) & 0xff) * Math.max(0f, Math.min(1f, opacity)));
+        return (alpha << 24) | (color & 0x00ffffff);
+    }
+}
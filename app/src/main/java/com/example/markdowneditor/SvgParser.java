@@ -0,0 +1,586 @@
+package com.example.markdowneditor;
+
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.graphics.RectF;
+import android.util.Xml;
+
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Потоковый разбор SVG через {@link XmlPullParser} в {@link SvgDocument}.
+ * Неподдерживаемые элементы (image, filter, use, pattern и т. п.) пропускаются вместе с содержимым.
+ */
+public final class SvgParser {
+    private static final Map<String, Integer> NAMED_COLORS = new HashMap<>();
+
+    static {
+        NAMED_COLORS.put("black", 0xff000000);
+        NAMED_COLORS.put("white", 0xffffffff);
+        NAMED_COLORS.put("red", 0xffff0000);
+        NAMED_COLORS.put("green", 0xff008000);
+        NAMED_COLORS.put("blue", 0xff0000ff);
+        NAMED_COLORS.put("yellow", 0xffffff00);
+        NAMED_COLORS.put("orange", 0xffffa500);
+        NAMED_COLORS.put("gray", 0xff808080);
+        NAMED_COLORS.put("grey", 0xff808080);
+        NAMED_COLORS.put("silver", 0xffc0c0c0);
+        NAMED_COLORS.put("lightgray", 0xffd3d3d3);
+        NAMED_COLORS.put("lightgrey", 0xffd3d3d3);
+        NAMED_COLORS.put("darkgray", 0xffa9a9a9);
+        NAMED_COLORS.put("purple", 0xff800080);
+        NAMED_COLORS.put("navy", 0xff000080);
+        NAMED_COLORS.put("teal", 0xff008080);
+        NAMED_COLORS.put("brown", 0xffa52a2a);
+        NAMED_COLORS.put("transparent", 0x00000000);
+    }
+
+    private final XmlPullParser parser;
+    private final Map<String, SvgDocument.Gradient> gradients = new HashMap<>();
+    private final Map<String, Path> clipPaths = new HashMap<>();
+
+    private SvgParser(XmlPullParser parser) {
+        this.parser = parser;
+    }
+
+    public static SvgDocument parse(InputStream svgStream) throws IOException {
+        try {
+            XmlPullParser xmlParser = Xml.newPullParser();
+            xmlParser.setFeature(XmlPullParser.FEATURE_PROCESS_NAMESPACES, false);
+            xmlParser.setInput(svgStream, null);
+            return new SvgParser(xmlParser).parseDocument();
+        } catch (XmlPullParserException | RuntimeException exception) {
+            throw new IOException("Некорректный SVG: " + exception.getMessage(), exception);
+        }
+    }
+
+    private SvgDocument parseDocument() throws IOException, XmlPullParserException {
+        int eventType = parser.getEventType();
+        while (eventType != XmlPullParser.START_TAG) {
+            if (eventType == XmlPullParser.END_DOCUMENT) {
+                throw new IOException("Пустой SVG");
+            }
+            eventType = parser.next();
+        }
+        if (!"svg".equals(localName(parser.getName()))) {
+            throw new IOException("Корневой элемент не svg: " + parser.getName());
+        }
+
+        float width = parseLength(parser.getAttributeValue(null, "width"), 0);
+        float height = parseLength(parser.getAttributeValue(null, "height"), 0);
+        RectF viewBox = null;
+        float[] viewBoxValues = parseNumberList(parser.getAttributeValue(null, "viewBox"));
+        if (viewBoxValues.length == 4) {
+            viewBox = new RectF(viewBoxValues[0], viewBoxValues[1],
+                    viewBoxValues[0] + viewBoxValues[2], viewBoxValues[1] + viewBoxValues[3]);
+        }
+
+        SvgDocument.Group root = new SvgDocument.Group();
+        root.style = applyStyleAttributes(new SvgDocument.Style());
+        parseChildren(root, root.style, false);
+        return new SvgDocument(width, height, viewBox, root, gradients, clipPaths);
+    }
+
+    /**
+     * Разбирает содержимое текущего элемента. Фигуры внутри defs не рисуются,
+     * а фигуры внутри clipPath и mask объединяются в путь обрезки (см. {@link #parseClipPath}).
+     */
+    private void parseChildren(SvgDocument.Group group, SvgDocument.Style parentStyle, boolean isDefinition)
+            throws IOException, XmlPullParserException {
+        int depth = parser.getDepth();
+        while (true) {
+            int eventType = parser.next();
+            if (eventType == XmlPullParser.END_DOCUMENT
+                    || (eventType == XmlPullParser.END_TAG && parser.getDepth() == depth)) {
+                return;
+            }
+            if (eventType != XmlPullParser.START_TAG) {
+                continue;
+            }
+
+            String elementName = localName(parser.getName());
+            switch (elementName) {
+                case "g":
+                case "a": {
+                    SvgDocument.Group childGroup = new SvgDocument.Group();
+                    initNode(childGroup, parentStyle);
+                    parseChildren(childGroup, childGroup.style, isDefinition);
+                    if (!isDefinition) {
+                        group.children.add(childGroup);
+                    }
+                    break;
+                }
+                case "defs":
+                    parseChildren(new SvgDocument.Group(), parentStyle, true);
+                    break;
+                case "linearGradient":
+                    parseLinearGradient();
+                    break;
+                case "clipPath":
+                case "mask":
+                    parseClipPath(parentStyle);
+                    break;
+                case "text": {
+                    SvgDocument.Text textNode = parseText(parentStyle);
+                    if (!isDefinition) {
+                        group.children.add(textNode);
+                    }
+                    break;
+                }
+                default: {
+                    Path shapePath = parseShapePath(elementName);
+                    if (shapePath == null) {
+                        skipElement();
+                        break;
+                    }
+                    SvgDocument.Shape shape = new SvgDocument.Shape(shapePath);
+                    initNode(shape, parentStyle);
+                    skipElement();
+                    if (!isDefinition) {
+                        group.children.add(shape);
+                    }
+                    break;
+                }
+            }
+        }
+    }
+
+    private void initNode(SvgDocument.Node node, SvgDocument.Style parentStyle) {
+        node.style = applyStyleAttributes(parentStyle.inherit());
+        node.transform = parseTransform(parser.getAttributeValue(null, "transform"));
+    }
+
+    private Path parseShapePath(String elementName) {
+        Path path = new Path();
+        switch (elementName) {
+            case "rect": {
+                float x = attributeFloat("x", 0);
+                float y = attributeFloat("y", 0);
+                float rectWidth = attributeFloat("width", 0);
+                float rectHeight = attributeFloat("height", 0);
+                float rx = attributeFloat("rx", -1);
+                float ry = attributeFloat("ry", -1);
+                if (rx < 0) {
+                    rx = Math.max(ry, 0);
+                }
+                if (ry < 0) {
+                    ry = rx;
+                }
+                RectF rect = new RectF(x, y, x + rectWidth, y + rectHeight);
+                if (rx > 0 || ry > 0) {
+                    path.addRoundRect(rect, Math.min(rx, rectWidth / 2), Math.min(ry, rectHeight / 2),
+                            Path.Direction.CW);
+                } else {
+                    path.addRect(rect, Path.Direction.CW);
+                }
+                return path;
+            }
+            case "circle": {
+                path.addCircle(attributeFloat("cx", 0), attributeFloat("cy", 0), attributeFloat("r", 0),
+                        Path.Direction.CW);
+                return path;
+            }
+            case "ellipse": {
+                float cx = attributeFloat("cx", 0);
+                float cy = attributeFloat("cy", 0);
+                float rx = attributeFloat("rx", 0);
+                float ry = attributeFloat("ry", 0);
+                path.addOval(new RectF(cx - rx, cy - ry, cx + rx, cy + ry), Path.Direction.CW);
+                return path;
+            }
+            case "line": {
+                path.moveTo(attributeFloat("x1", 0), attributeFloat("y1", 0));
+                path.lineTo(attributeFloat("x2", 0), attributeFloat("y2", 0));
+                return path;
+            }
+            case "polyline":
+            case "polygon": {
+                float[] points = parseNumberList(parser.getAttributeValue(null, "points"));
+                for (int pointIndex = 0; pointIndex + 1 < points.length; pointIndex += 2) {
+                    if (pointIndex == 0) {
+                        path.moveTo(points[0], points[1]);
+                    } else {
+                        path.lineTo(points[pointIndex], points[pointIndex + 1]);
+                    }
+                }
+                if (elementName.equals("polygon")) {
+                    path.close();
+                }
+                return path;
+            }
+            case "path": {
+                String pathData = parser.getAttributeValue(null, "d");
+                return pathData != null ? SvgPathData.parse(pathData) : null;
+            }
+            default:
+                return null;
+        }
+    }
+
+    private SvgDocument.Text parseText(SvgDocument.Style parentStyle) throws IOException, XmlPullParserException {
+        float x = firstNumber(parser.getAttributeValue(null, "x"));
+        float y = firstNumber(parser.getAttributeValue(null, "y"));
+        SvgDocument.Style textStyle = applyStyleAttributes(parentStyle.inherit());
+        Matrix transform = parseTransform(parser.getAttributeValue(null, "transform"));
+
+        StringBuilder textContent = new StringBuilder();
+        int depth = parser.getDepth();
+        while (true) {
+            int eventType = parser.next();
+            if (eventType == XmlPullParser.END_DOCUMENT
+                    || (eventType == XmlPullParser.END_TAG && parser.getDepth() == depth)) {
+                break;
+            }
+            if (eventType == XmlPullParser.TEXT) {
+                textContent.append(parser.getText());
+            }
+        }
+
+        SvgDocument.Text textNode = new SvgDocument.Text(x, y, textContent.toString().trim().replaceAll("\\s+", " "));
+        textNode.style = textStyle;
+        textNode.transform = transform;
+        return textNode;
+    }
+
+    private void parseLinearGradient() throws IOException, XmlPullParserException {
+        String gradientId = parser.getAttributeValue(null, "id");
+        SvgDocument.Gradient gradient = new SvgDocument.Gradient();
+        gradient.isUserSpace = "userSpaceOnUse".equals(parser.getAttributeValue(null, "gradientUnits"));
+        gradient.x1 = parseFraction(parser.getAttributeValue(null, "x1"), gradient.x1);
+        gradient.y1 = parseFraction(parser.getAttributeValue(null, "y1"), gradient.y1);
+        gradient.x2 = parseFraction(parser.getAttributeValue(null, "x2"), gradient.x2);
+        gradient.y2 = parseFraction(parser.getAttributeValue(null, "y2"), gradient.y2);
+
+        int depth = parser.getDepth();
+        while (true) {
+            int eventType = parser.next();
+            if (eventType == XmlPullParser.END_DOCUMENT
+                    || (eventType == XmlPullParser.END_TAG && parser.getDepth() == depth)) {
+                break;
+            }
+            if (eventType == XmlPullParser.START_TAG && "stop".equals(localName(parser.getName()))) {
+                Map<String, String> stopProperties = readPresentationAttributes();
+                Integer stopColor = parseColor(stopProperties.get("stop-color"));
+                float stopOpacity = parseFraction(stopProperties.get("stop-opacity"), 1f);
+                gradient.stopOffsets.add(Math.max(0f, Math.min(1f,
+                        parseFraction(parser.getAttributeValue(null, "offset"), 0f))));
+                gradient.stopColors.add(SvgDocument.applyOpacity(
+                        stopColor != null ? stopColor : 0xff000000, stopOpacity));
+            }
+        }
+        if (gradientId != null) {
+            gradients.put(gradientId, gradient);
+        }
+    }
+
+    private void parseClipPath(SvgDocument.Style parentStyle) throws IOException, XmlPullParserException {
+        String clipPathId = parser.getAttributeValue(null, "id");
+        SvgDocument.Group clipGroup = new SvgDocument.Group();
+        parseChildren(clipGroup, parentStyle, false);
+
+        Path clipPath = new Path();
+        for (SvgDocument.Node clipNode : clipGroup.children) {
+            if (clipNode instanceof SvgDocument.Shape) {
+                Path shapePath = new Path(((SvgDocument.Shape) clipNode).path);
+                if (clipNode.transform != null) {
+                    shapePath.transform(clipNode.transform);
+                }
+                clipPath.addPath(shapePath);
+            }
+        }
+        if (clipPathId != null) {
+            clipPaths.put(clipPathId, clipPath);
+        }
+    }
+
+    private void skipElement() throws IOException, XmlPullParserException {
+        int depth = parser.getDepth();
+        while (true) {
+            int eventType = parser.next();
+            if (eventType == XmlPullParser.END_DOCUMENT
+                    || (eventType == XmlPullParser.END_TAG && parser.getDepth() == depth)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Атрибуты оформления вместе со свойствами из атрибута style, которые имеют приоритет
+     */
+    private Map<String, String> readPresentationAttributes() {
+        Map<String, String> properties = new HashMap<>();
+        for (int attributeIndex = 0; attributeIndex < parser.getAttributeCount(); attributeIndex++) {
+            properties.put(localName(parser.getAttributeName(attributeIndex)),
+                    parser.getAttributeValue(attributeIndex).trim());
+        }
+        String inlineStyle = properties.get("style");
+        if (inlineStyle != null) {
+            for (String declaration : inlineStyle.split(";")) {
+                int separator = declaration.indexOf(':');
+                if (separator > 0) {
+                    properties.put(declaration.substring(0, separator).trim(),
+                            declaration.substring(separator + 1).trim());
+                }
+            }
+        }
+        return properties;
+    }
+
+    private SvgDocument.Style applyStyleAttributes(SvgDocument.Style style) {
+        Map<String, String> properties = readPresentationAttributes();
+
+        String fill = properties.get("fill");
+        if (fill != null) {
+            style.fillGradientId = parseUrlReference(fill);
+            style.fillColor = style.fillGradientId != null ? null : parseColor(fill);
+        }
+        String stroke = properties.get("stroke");
+        if (stroke != null) {
+            style.strokeGradientId = parseUrlReference(stroke);
+            style.strokeColor = style.strokeGradientId != null ? null : parseColor(stroke);
+        }
+        style.fillOpacity = parseFraction(properties.get("fill-opacity"), style.fillOpacity);
+        style.strokeOpacity = parseFraction(properties.get("stroke-opacity"), style.strokeOpacity);
+        style.strokeWidth = parseLength(properties.get("stroke-width"), style.strokeWidth);
+        style.opacity = parseFraction(properties.get("opacity"), 1f);
+        style.fontSize = parseLength(properties.get("font-size"), style.fontSize);
+
+        String lineCap = properties.get("stroke-linecap");
+        if ("round".equals(lineCap)) {
+            style.strokeCap = Paint.Cap.ROUND;
+        } else if ("square".equals(lineCap)) {
+            style.strokeCap = Paint.Cap.SQUARE;
+        }
+        String lineJoin = properties.get("stroke-linejoin");
+        if ("round".equals(lineJoin)) {
+            style.strokeJoin = Paint.Join.ROUND;
+        } else if ("bevel".equals(lineJoin)) {
+            style.strokeJoin = Paint.Join.BEVEL;
+        }
+
+        String fontWeight = properties.get("font-weight");
+        if (fontWeight != null) {
+            style.isBold = fontWeight.equals("bold") || fontWeight.equals("bolder")
+                    || (fontWeight.matches("\\d+") && Integer.parseInt(fontWeight) >= 600);
+        }
+        String fontFamily = properties.get("font-family");
+        if (fontFamily != null) {
+            style.fontFamily = fontFamily.toLowerCase(Locale.US);
+        }
+        String textAnchor = properties.get("text-anchor");
+        if ("middle".equals(textAnchor)) {
+            style.textAlign = Paint.Align.CENTER;
+        } else if ("end".equals(textAnchor)) {
+            style.textAlign = Paint.Align.RIGHT;
+        } else if ("start".equals(textAnchor)) {
+            style.textAlign = Paint.Align.LEFT;
+        }
+
+        String clipReference = properties.get("clip-path");
+        if (clipReference == null) {
+            clipReference = properties.get("mask");
+        }
+        style.clipPathId = clipReference != null ? parseUrlReference(clipReference) : null;
+        return style;
+    }
+
+    private float attributeFloat(String attributeName, float defaultValue) {
+        return parseLength(parser.getAttributeValue(null, attributeName), defaultValue);
+    }
+
+    private static String localName(String qualifiedName) {
+        int prefixEnd = qualifiedName.indexOf(':');
+        return prefixEnd >= 0 ? qualifiedName.substring(prefixEnd + 1) : qualifiedName;
+    }
+
+    /**
+     * Идентификатор из ссылки вида url(#id) или null
+     */
+    static String parseUrlReference(String value) {
+        String trimmedValue = value.trim();
+        if (!trimmedValue.startsWith("url(")) {
+            return null;
+        }
+        int hashIndex = trimmedValue.indexOf('#');
+        int closeIndex = trimmedValue.indexOf(')');
+        if (hashIndex < 0 || closeIndex < hashIndex) {
+            return null;
+        }
+        return trimmedValue.substring(hashIndex + 1, closeIndex).replace("'", "").replace("\"", "").trim();
+    }
+
+    /**
+     * Цвет в формате #rgb, #rrggbb, rgb(r, g, b) или по имени; null для "none"
+     */
+    static Integer parseColor(String value) {
+        if (value == null) {
+            return null;
+        }
+        String colorValue = value.trim().toLowerCase(Locale.US);
+        if (colorValue.isEmpty() || colorValue.equals("none")) {
+            return null;
+        }
+        if (colorValue.equals("currentcolor")) {
+            return 0xff000000;
+        }
+        try {
+            if (colorValue.startsWith("#")) {
+                String hex = colorValue.substring(1);
+                if (hex.length() == 3) {
+                    hex = new String(new char[]{hex.charAt(0), hex.charAt(0), hex.charAt(1), hex.charAt(1),
+                            hex.charAt(2), hex.charAt(2)});
+                }
+                return 0xff000000 | Integer.parseInt(hex.substring(0, 6), 16);
+            }
+            if (colorValue.startsWith("rgb")) {
+                String[] components = colorValue.substring(colorValue.indexOf('(') + 1, colorValue.indexOf(')'))
+                        .split("\\s*,\\s*");
+                int color = 0xff000000;
+                for (int componentIndex = 0; componentIndex < 3; componentIndex++) {
+                    String component = components[componentIndex].trim();
+                    int componentValue = component.endsWith("%")
+                            ? Math.round(Float.parseFloat(component.substring(0, component.length() - 1)) * 2.55f)
+                            : Math.round(Float.parseFloat(component));
+                    color |= Math.max(0, Math.min(255, componentValue)) << (16 - componentIndex * 8);
+                }
+                return color;
+            }
+        } catch (RuntimeException exception) {
+            return 0xff000000;
+        }
+        Integer namedColor = NAMED_COLORS.get(colorValue);
+        return namedColor != null ? namedColor : 0xff000000;
+    }
+
+    /**
+     * Длина в пользовательских единицах; проценты и неизвестные единицы заменяются значением по умолчанию
+     */
+    static float parseLength(String value, float defaultValue) {
+        if (value == null) {
+            return defaultValue;
+        }
+        String lengthValue = value.trim();
+        float multiplier = 1f;
+        if (lengthValue.endsWith("%")) {
+            return defaultValue;
+        } else if (lengthValue.endsWith("px")) {
+            lengthValue = lengthValue.substring(0, lengthValue.length() - 2);
+        } else if (lengthValue.endsWith("pt")) {
+            lengthValue = lengthValue.substring(0, lengthValue.length() - 2);
+            multiplier = 4f / 3f;
+        } else if (lengthValue.endsWith("em")) {
+            lengthValue = lengthValue.substring(0, lengthValue.length() - 2);
+            multiplier = 16f;
+        }
+        try {
+            return Float.parseFloat(lengthValue.trim()) * multiplier;
+        } catch (NumberFormatException exception) {
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Доля: "0.5" или "50%"
+     */
+    static float parseFraction(String value, float defaultValue) {
+        if (value == null) {
+            return defaultValue;
+        }
+        String fractionValue = value.trim();
+        try {
+            if (fractionValue.endsWith("%")) {
+                return Float.parseFloat(fractionValue.substring(0, fractionValue.length() - 1)) / 100f;
+            }
+            return Float.parseFloat(fractionValue);
+        } catch (NumberFormatException exception) {
+            return defaultValue;
+        }
+    }
+
+    private static float firstNumber(String value) {
+        float[] numbers = parseNumberList(value);
+        return numbers.length > 0 ? numbers[0] : 0;
+    }
+
+    static float[] parseNumberList(String value) {
+        if (value == null) {
+            return new float[0];
+        }
+        SvgPathData.NumberScanner scanner = new SvgPathData.NumberScanner(value);
+        float[] numbers = new float[8];
+        int numberCount = 0;
+        while (scanner.hasNumber()) {
+            if (numberCount == numbers.length) {
+                numbers = Arrays.copyOf(numbers, numberCount * 2);
+            }
+            numbers[numberCount++] = scanner.nextNumber();
+        }
+        return Arrays.copyOf(numbers, numberCount);
+    }
+
+    /**
+     * Список трансформаций: translate, scale, rotate, skewX, skewY и matrix
+     */
+    static Matrix parseTransform(String value) {
+        if (value == null || value.trim().isEmpty()) {
+            return null;
+        }
+        Matrix transform = new Matrix();
+        int position = 0;
+        while (position < value.length()) {
+            int openIndex = value.indexOf('(', position);
+            int closeIndex = value.indexOf(')', openIndex + 1);
+            if (openIndex < 0 || closeIndex < 0) {
+                break;
+            }
+            String operation = value.substring(position, openIndex).replace(",", "").trim();
+            float[] arguments = parseNumberList(value.substring(openIndex + 1, closeIndex));
+            Matrix operationMatrix = new Matrix();
+            switch (operation) {
+                case "translate":
+                    operationMatrix.setTranslate(argument(arguments, 0, 0), argument(arguments, 1, 0));
+                    break;
+                case "scale":
+                    float scaleX = argument(arguments, 0, 1);
+                    operationMatrix.setScale(scaleX, argument(arguments, 1, scaleX));
+                    break;
+                case "rotate":
+                    operationMatrix.setRotate(argument(arguments, 0, 0),
+                            argument(arguments, 1, 0), argument(arguments, 2, 0));
+                    break;
+                case "skewX":
+                    operationMatrix.setSkew((float) Math.tan(Math.toRadians(argument(arguments, 0, 0))), 0);
+                    break;
+                case "skewY":
+                    operationMatrix.setSkew(0, (float) Math.tan(Math.toRadians(argument(arguments, 0, 0))));
+                    break;
+                case "matrix":
+                    if (arguments.length == 6) {
+                        operationMatrix.setValues(new float[]{
+                                arguments[0], arguments[2], arguments[4],
+                                arguments[1], arguments[3], arguments[5],
+                                0, 0, 1});
+                    }
+                    break;
+                default:
+                    break;
+            }
+            transform.preConcat(operationMatrix);
+            position = closeIndex + 1;
+        }
+        return transform;
+    }
+
+    private static float argument(float[] arguments, int index, float defaultValue) {
+        return index < arguments.length ? arguments[index] : defaultValue;
+    }
+}
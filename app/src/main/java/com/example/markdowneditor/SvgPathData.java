@@ -0,0 +1,306 @@
+package com.example.markdowneditor;
+
+import android.graphics.Path;
+import android.graphics.RectF;
+
+/**
+ * Разбор атрибута d элемента path: команды M, L, H, V, C, S, Q, T, A, Z
+ * в абсолютной и относительной форме
+ */
+final class SvgPathData {
+    private static final int ARC_SEGMENTS_PER_QUARTER = 8;
+
+    private SvgPathData() {
+    }
+
+    /**
+     * Ошибка в данных не отменяет весь путь: как требует спецификация, рисуется всё до неё
+     */
+    static Path parse(String pathData) {
+        Path path = new Path();
+        try {
+            appendCommands(path, pathData);
+        } catch (IllegalArgumentException exception) {
+            // Путь остаётся обрезанным на месте ошибки
+        }
+        return path;
+    }
+
+    private static void appendCommands(Path path, String pathData) {
+        NumberScanner scanner = new NumberScanner(pathData);
+        float currentX = 0;
+        float currentY = 0;
+        float subpathStartX = 0;
+        float subpathStartY = 0;
+        // Вторая контрольная точка предыдущей кривой для команд S и T
+        float controlX = 0;
+        float controlY = 0;
+        char previousCommand = ' ';
+        char command = ' ';
+
+        while (true) {
+            char nextCommand = scanner.nextCommand();
+            if (nextCommand != 0) {
+                command = nextCommand;
+            } else if (!scanner.hasNumber() || command == ' ' || command == 'Z' || command == 'z') {
+                break;
+            }
+            boolean isRelative = Character.isLowerCase(command);
+            float originX = isRelative ? currentX : 0;
+            float originY = isRelative ? currentY : 0;
+
+            switch (Character.toUpperCase(command)) {
+                case 'M':
+                    currentX = originX + scanner.nextNumber();
+                    currentY = originY + scanner.nextNumber();
+                    path.moveTo(currentX, currentY);
+                    subpathStartX = currentX;
+                    subpathStartY = currentY;
+                    // Следующие пары координат после M — это неявные L
+                    command = isRelative ? 'l' : 'L';
+                    break;
+                case 'L':
+                    currentX = originX + scanner.nextNumber();
+                    currentY = originY + scanner.nextNumber();
+                    path.lineTo(currentX, currentY);
+                    break;
+                case 'H':
+                    currentX = originX + scanner.nextNumber();
+                    path.lineTo(currentX, currentY);
+                    break;
+                case 'V':
+                    currentY = originY + scanner.nextNumber();
+                    path.lineTo(currentX, currentY);
+                    break;
+                case 'C': {
+                    float x1 = originX + scanner.nextNumber();
+                    float y1 = originY + scanner.nextNumber();
+                    controlX = originX + scanner.nextNumber();
+                    controlY = originY + scanner.nextNumber();
+                    currentX = originX + scanner.nextNumber();
+                    currentY = originY + scanner.nextNumber();
+                    path.cubicTo(x1, y1, controlX, controlY, currentX, currentY);
+                    break;
+                }
+                case 'S': {
+                    boolean continuesCubic = "CcSs".indexOf(previousCommand) >= 0;
+                    float x1 = continuesCubic ? 2 * currentX - controlX : currentX;
+                    float y1 = continuesCubic ? 2 * currentY - controlY : currentY;
+                    controlX = originX + scanner.nextNumber();
+                    controlY = originY + scanner.nextNumber();
+                    currentX = originX + scanner.nextNumber();
+                    currentY = originY + scanner.nextNumber();
+                    path.cubicTo(x1, y1, controlX, controlY, currentX, currentY);
+                    break;
+                }
+                case 'Q':
+                    controlX = originX + scanner.nextNumber();
+                    controlY = originY + scanner.nextNumber();
+                    currentX = originX + scanner.nextNumber();
+                    currentY = originY + scanner.nextNumber();
+                    path.quadTo(controlX, controlY, currentX, currentY);
+                    break;
+                case 'T': {
+                    boolean continuesQuad = "QqTt".indexOf(previousCommand) >= 0;
+                    controlX = continuesQuad ? 2 * currentX - controlX : currentX;
+                    controlY = continuesQuad ? 2 * currentY - controlY : currentY;
+                    currentX = originX + scanner.nextNumber();
+                    currentY = originY + scanner.nextNumber();
+                    path.quadTo(controlX, controlY, currentX, currentY);
+                    break;
+                }
+                case 'A': {
+                    float radiusX = Math.abs(scanner.nextNumber());
+                    float radiusY = Math.abs(scanner.nextNumber());
+                    float rotation = scanner.nextNumber();
+                    boolean isLargeArc = scanner.nextFlag();
+                    boolean isSweep = scanner.nextFlag();
+                    float endX = originX + scanner.nextNumber();
+                    float endY = originY + scanner.nextNumber();
+                    addArc(path, currentX, currentY, radiusX, radiusY, rotation, isLargeArc, isSweep, endX, endY);
+                    currentX = endX;
+                    currentY = endY;
+                    break;
+                }
+                case 'Z':
+                    path.close();
+                    currentX = subpathStartX;
+                    currentY = subpathStartY;
+                    break;
+                default:
+                    throw new IllegalArgumentException("Неизвестная команда пути: " + command);
+            }
+            previousCommand = command;
+        }
+    }
+
+    /**
+     * Дуга эллипса по SVG-параметрам (приложение F.6 спецификации SVG 1.1). Без поворота
+     * используется {@link Path#arcTo}, повёрнутая дуга аппроксимируется ломаной.
+     */
+    private static void addArc(Path path, float startX, float startY, float radiusX, float radiusY,
+                               float rotationDegrees, boolean isLargeArc, boolean isSweep,
+                               float endX, float endY) {
+        if (radiusX == 0 || radiusY == 0 || (startX == endX && startY == endY)) {
+            path.lineTo(endX, endY);
+            return;
+        }
+        double rotation = Math.toRadians(rotationDegrees % 360);
+        double cosRotation = Math.cos(rotation);
+        double sinRotation = Math.sin(rotation);
+        double halfDeltaX = (startX - endX) / 2.0;
+        double halfDeltaY = (startY - endY) / 2.0;
+        double x1 = cosRotation * halfDeltaX + sinRotation * halfDeltaY;
+        double y1 = -sinRotation * halfDeltaX + cosRotation * halfDeltaY;
+
+        double rx = radiusX;
+        double ry = radiusY;
+        double radiiScale = (x1 * x1) / (rx * rx) + (y1 * y1) / (ry * ry);
+        if (radiiScale > 1) {
+            rx *= Math.sqrt(radiiScale);
+            ry *= Math.sqrt(radiiScale);
+        }
+
+        double numerator = rx * rx * ry * ry - rx * rx * y1 * y1 - ry * ry * x1 * x1;
+        double denominator = rx * rx * y1 * y1 + ry * ry * x1 * x1;
+        double centerFactor = Math.sqrt(Math.max(0, numerator / denominator));
+        if (isLargeArc == isSweep) {
+            centerFactor = -centerFactor;
+        }
+        double centerX1 = centerFactor * rx * y1 / ry;
+        double centerY1 = -centerFactor * ry * x1 / rx;
+        double centerX = cosRotation * centerX1 - sinRotation * centerY1 + (startX + endX) / 2.0;
+        double centerY = sinRotation * centerX1 + cosRotation * centerY1 + (startY + endY) / 2.0;
+
+        double startAngle = Math.atan2((y1 - centerY1) / ry, (x1 - centerX1) / rx);
+        double endAngle = Math.atan2((-y1 - centerY1) / ry, (-x1 - centerX1) / rx);
+        double sweepAngle = endAngle - startAngle;
+        if (isSweep && sweepAngle < 0) {
+            sweepAngle += 2 * Math.PI;
+        } else if (!isSweep && sweepAngle > 0) {
+            sweepAngle -= 2 * Math.PI;
+        }
+
+        if (rotation == 0) {
+            RectF oval = new RectF((float) (centerX - rx), (float) (centerY - ry),
+                    (float) (centerX + rx), (float) (centerY + ry));
+            path.arcTo(oval, (float) Math.toDegrees(startAngle), (float) Math.toDegrees(sweepAngle), false);
+            return;
+        }
+
+        int segmentCount = Math.max(2, (int) Math.ceil(Math.abs(sweepAngle) / (Math.PI / 2) * ARC_SEGMENTS_PER_QUARTER));
+        for (int segmentIndex = 1; segmentIndex <= segmentCount; segmentIndex++) {
+            double angle = startAngle + sweepAngle * segmentIndex / segmentCount;
+            double ellipseX = rx * Math.cos(angle);
+            double ellipseY = ry * Math.sin(angle);
+            path.lineTo((float) (centerX + cosRotation * ellipseX - sinRotation * ellipseY),
+                    (float) (centerY + sinRotation * ellipseX + cosRotation * ellipseY));
+        }
+    }
+
+    /**
+     * Последовательное чтение чисел и букв команд из строки с произвольными разделителями
+     * (пробелы, запятые или знак следующего числа, как в "10-5.5.5")
+     */
+    static final class NumberScanner {
+        private final String text;
+        private int position;
+
+        NumberScanner(String text) {
+            this.text = text;
+        }
+
+        private void skipSeparators() {
+            while (position < text.length()) {
+                char character = text.charAt(position);
+                if (character != ',' && !Character.isWhitespace(character)) {
+                    return;
+                }
+                position++;
+            }
+        }
+
+        boolean hasNumber() {
+            skipSeparators();
+            if (position >= text.length()) {
+                return false;
+            }
+            char character = text.charAt(position);
+            return Character.isDigit(character) || character == '-' || character == '+' || character == '.';
+        }
+
+        /**
+         * Буква команды в текущей позиции или 0, если дальше идёт число или конец строки
+         */
+        char nextCommand() {
+            skipSeparators();
+            if (position < text.length() && Character.isLetter(text.charAt(position))) {
+                char character = text.charAt(position);
+                if (character != 'e' && character != 'E') {
+                    position++;
+                    return character;
+                }
+            }
+            return 0;
+        }
+
+        float nextNumber() {
+            if (!hasNumber()) {
+                throw new IllegalArgumentException("Ожидалось число в позиции " + position);
+            }
+            int start = position;
+            if (text.charAt(position) == '-' || text.charAt(position) == '+') {
+                position++;
+            }
+            boolean hasDecimalPoint = false;
+            boolean hasDigits = false;
+            while (position < text.length()) {
+                char character = text.charAt(position);
+                if (character == '.' && !hasDecimalPoint) {
+                    hasDecimalPoint = true;
+                } else if (character >= '0' && character <= '9') {
+                    hasDigits = true;
+                } else if ((character == 'e' || character == 'E') && hasDigits) {
+                    position = skipExponent(position + 1);
+                    break;
+                } else {
+                    break;
+                }
+                position++;
+            }
+            if (!hasDigits) {
+                throw new IllegalArgumentException("Ожидалось число в позиции " + start);
+            }
+            return Float.parseFloat(text.substring(start, position));
+        }
+
+        /**
+         * Пропускает знак и цифры порядка, начиная сразу после 'e'; порядок без цифр — ошибка
+         */
+        private int skipExponent(int exponentStart) {
+            int exponentEnd = exponentStart;
+            if (exponentEnd < text.length() && (text.charAt(exponentEnd) == '-' || text.charAt(exponentEnd) == '+')) {
+                exponentEnd++;
+            }
+            int digitsStart = exponentEnd;
+            while (exponentEnd < text.length() && text.charAt(exponentEnd) >= '0' && text.charAt(exponentEnd) <= '9') {
+                exponentEnd++;
+            }
+            if (exponentEnd == digitsStart) {
+                throw new IllegalArgumentException("Нет цифр порядка в позиции " + exponentStart);
+            }
+            return exponentEnd;
+        }
+
+        /**
+         * Флаг дуги: одна цифра 0 или 1, которую можно не отделять от следующего числа
+         */
+        boolean nextFlag() {
+            skipSeparators();
+            if (position >= text.length()) {
+                throw new IllegalArgumentException("Ожидался флаг дуги");
+            }
+            return text.charAt(position++) == '1';
+        }
+    }
+}
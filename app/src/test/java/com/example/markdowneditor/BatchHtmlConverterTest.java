@@ -0,0 +1,82 @@
+package com.example.markdowneditor;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Повторные запуски конвертации на одном и том же выходном каталоге
+ */
+public class BatchHtmlConverterTest {
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private static void writeFile(File file, String content) throws IOException {
+        File parentDirectory = file.getParentFile();
+        assertTrue(parentDirectory.isDirectory() || parentDirectory.mkdirs());
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String readFile(File file) throws IOException {
+        return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void run_convertsThenSkipsUnchangedThenRemovesDeleted() throws Exception {
+        File inputDirectory = temporaryFolder.newFolder("in");
+        File outputDirectory = new File(temporaryFolder.getRoot(), "out");
+        writeFile(new File(inputDirectory, "readme.md"), "# Описание\n\nТекст");
+        writeFile(new File(inputDirectory, "docs/guide.markdown"), "Руководство");
+        BatchHtmlConverter converter = new BatchHtmlConverter(inputDirectory, outputDirectory, 2);
+
+        BatchHtmlConverter.Result firstResult = converter.run();
+        assertEquals(2, firstResult.convertedCount);
+        assertEquals(0, firstResult.skippedCount);
+        File guideHtml = new File(outputDirectory, "docs/guide.html");
+        assertTrue(readFile(new File(outputDirectory, "readme.html")).contains("Описание"));
+        assertTrue(guideHtml.isFile());
+
+        BatchHtmlConverter.Result secondResult = converter.run();
+        assertEquals(0, secondResult.convertedCount);
+        assertEquals(2, secondResult.skippedCount);
+
+        writeFile(new File(inputDirectory, "readme.md"), "# Новое описание");
+        assertTrue(new File(inputDirectory, "docs/guide.markdown").delete());
+        BatchHtmlConverter.Result thirdResult = converter.run();
+        assertEquals(1, thirdResult.convertedCount);
+        assertEquals(1, thirdResult.removedCount);
+        assertTrue(readFile(new File(outputDirectory, "readme.html")).contains("Новое описание"));
+        assertFalse(guideHtml.exists());
+        assertFalse(new File(outputDirectory, "docs").exists());
+        assertFalse(readFile(new File(outputDirectory, BatchHtmlConverter.MANIFEST_FILE_NAME)).contains("guide"));
+    }
+
+    @Test
+    public void run_convertsFirstSourceWhenOutputsCollide() throws Exception {
+        File inputDirectory = temporaryFolder.newFolder("in");
+        File outputDirectory = new File(temporaryFolder.getRoot(), "out");
+        writeFile(new File(inputDirectory, "a.md"), "Из md");
+        writeFile(new File(inputDirectory, "a.markdown"), "Из markdown");
+
+        BatchHtmlConverter.Result result = new BatchHtmlConverter(inputDirectory, outputDirectory, 4).run();
+        assertEquals(1, result.convertedCount);
+        assertEquals(1, result.collidingCount);
+        assertEquals(0, result.failedCount);
+        assertTrue(readFile(new File(outputDirectory, "a.html")).contains("Из markdown"));
+
+        assertTrue(new File(inputDirectory, "a.markdown").delete());
+        BatchHtmlConverter.Result secondResult = new BatchHtmlConverter(inputDirectory, outputDirectory, 4).run();
+        assertEquals(1, secondResult.convertedCount);
+        assertEquals(0, secondResult.collidingCount);
+        assertTrue(readFile(new File(outputDirectory, "a.html")).contains("Из md"));
+    }
+}
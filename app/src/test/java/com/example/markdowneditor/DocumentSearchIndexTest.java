@@ -0,0 +1,80 @@
+package com.example.markdowneditor;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Поиск по индексу документа: префиксы слов, регистр и блоки, которые не индексируются
+ */
+public class DocumentSearchIndexTest {
+
+    private static DocumentSearchIndex buildIndex(String markdownContent) {
+        return new DocumentSearchIndex(MarkdownBlockParser.parse(markdownContent));
+    }
+
+    @Test
+    public void search_matchesWordPrefixesOnly() {
+        DocumentSearchIndex index = buildIndex("Разбор документа\n\nпереразбор и разборка\n");
+
+        List<DocumentSearchIndex.Match> matches = index.search("разбор");
+
+        assertEquals(2, matches.size());
+        assertEquals(0, matches.get(0).blockIndex);
+        assertEquals(0, matches.get(0).start);
+        assertEquals(6, matches.get(0).end);
+        // "переразбор" начинается не с запроса, а "разборка" начинается
+        assertEquals(1, matches.get(1).blockIndex);
+        assertEquals("переразбор и ".length(), matches.get(1).start);
+    }
+
+    @Test
+    public void search_withSeveralWords_requiresCompleteFirstWord() {
+        DocumentSearchIndex index = buildIndex("кот и котлета\n\nкот спит\n\nкотик спит\n");
+
+        assertEquals(4, index.search("кот").size());
+        List<DocumentSearchIndex.Match> phraseMatches = index.search("кот спит");
+        assertEquals(1, phraseMatches.size());
+        assertEquals(1, phraseMatches.get(0).blockIndex);
+    }
+
+    @Test
+    public void search_ignoresCase() {
+        DocumentSearchIndex index = buildIndex("# ЗАГОЛОВОК Раздела\n\nMarkdown and MARKDOWN\n");
+
+        assertEquals(1, index.search("заголовок").size());
+        assertEquals(1, index.search("раздела").size());
+        List<DocumentSearchIndex.Match> matches = index.search("mArKdOwN");
+        assertEquals(2, matches.size());
+        assertEquals("Markdown and ".length(), matches.get(1).start);
+    }
+
+    @Test
+    public void foldCase_keepsTextLength() {
+        String text = "İstanbul ẞ Ёлка";
+
+        assertEquals(text.length(), DocumentSearchIndex.foldCase(text).length());
+    }
+
+    @Test
+    public void search_skipsImageAltText() {
+        DocumentSearchIndex index = buildIndex("![схема сборки](scheme.png)\n\nсхема в тексте\n");
+
+        List<DocumentSearchIndex.Match> matches = index.search("схема");
+
+        assertEquals(1, matches.size());
+        assertEquals(1, matches.get(0).blockIndex);
+        assertTrue(index.search("сборки").isEmpty());
+    }
+
+    @Test
+    public void search_withoutLetters_scansAllBlocks() {
+        DocumentSearchIndex index = buildIndex("a + b\n\nc+d\n");
+
+        assertEquals(2, index.search("+").size());
+        assertTrue(index.search("   ").isEmpty());
+    }
+}
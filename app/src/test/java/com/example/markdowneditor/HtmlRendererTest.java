@@ -0,0 +1,48 @@
+package com.example.markdowneditor;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * HTML, который строит {@link HtmlRenderer} для отдельных блоков
+ */
+public class HtmlRendererTest {
+
+    private static String render(String markdownContent) throws IOException {
+        StringWriter writer = new StringWriter();
+        new HtmlRenderer(null, true).renderBlocks(MarkdownBlockParser.parse(markdownContent), writer);
+        return writer.toString().trim();
+    }
+
+    @Test
+    public void renderBlocks_nestsItalicInsideBold() throws IOException {
+        assertEquals("<p><strong>жирный </strong><strong><em>курсив</em></strong><strong> жирный</strong></p>",
+                render("**жирный *курсив* жирный**"));
+    }
+
+    @Test
+    public void renderBlocks_nestsBoldInsideItalic() throws IOException {
+        assertEquals("<p><em>курсив </em><strong><em>жирный</em></strong><em> курсив</em></p>",
+                render("*курсив **жирный** курсив*"));
+    }
+
+    @Test
+    public void renderBlocks_combinesBoldAndItalicDelimiters() throws IOException {
+        assertEquals("<p><strong><em>оба</em></strong></p>", render("***оба***"));
+    }
+
+    @Test
+    public void renderBlocks_rewritesMarkdownLinksToHtml() throws IOException {
+        assertEquals("<p><a href=\"docs/a.html#раздел\">a</a></p>", render("[a](docs/a.md#раздел)"));
+    }
+
+    @Test
+    public void renderBlocks_rendersUnsafeLinkAsText() throws IOException {
+        assertEquals("<p>скрипт</p>", render("[скрипт](javascript:void)"));
+        assertEquals("<p>скрипт</p>", render("[скрипт](java\tscript:void)"));
+    }
+}
@@ -0,0 +1,41 @@
+package com.example.markdowneditor;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Проверка схем ссылок, которые можно открывать из документа
+ */
+public class InlineMarkupTest {
+
+    @Test
+    public void isAllowedLinkUrl_acceptsWebMailAndRelativeLinks() {
+        assertTrue(InlineMarkup.isAllowedLinkUrl("https://example.com/a.md"));
+        assertTrue(InlineMarkup.isAllowedLinkUrl("HTTP://example.com"));
+        assertTrue(InlineMarkup.isAllowedLinkUrl("mailto:user@example.com"));
+        assertTrue(InlineMarkup.isAllowedLinkUrl("docs/readme.md"));
+        assertTrue(InlineMarkup.isAllowedLinkUrl("#установка"));
+        assertTrue(InlineMarkup.isAllowedLinkUrl("notes/a:b.md"));
+        assertTrue(InlineMarkup.isAllowedLinkUrl("page?time=10:30"));
+    }
+
+    @Test
+    public void isAllowedLinkUrl_rejectsOtherSchemes() {
+        assertFalse(InlineMarkup.isAllowedLinkUrl("javascript:alert(1)"));
+        assertFalse(InlineMarkup.isAllowedLinkUrl("JavaScript:alert(1)"));
+        assertFalse(InlineMarkup.isAllowedLinkUrl("data:text/html,<script>"));
+        assertFalse(InlineMarkup.isAllowedLinkUrl("intent://scan#Intent;end"));
+        assertFalse(InlineMarkup.isAllowedLinkUrl("file:///sdcard/secret.txt"));
+        assertFalse(InlineMarkup.isAllowedLinkUrl("content://contacts/people"));
+    }
+
+    @Test
+    public void isAllowedLinkUrl_ignoresWhitespaceAndControlCharsInScheme() {
+        assertFalse(InlineMarkup.isAllowedLinkUrl("java\tscript:alert(1)"));
+        assertFalse(InlineMarkup.isAllowedLinkUrl(" javascript:alert(1)"));
+        assertFalse(InlineMarkup.isAllowedLinkUrl("java\nscript:alert(1)"));
+        assertFalse(InlineMarkup.isAllowedLinkUrl("\u0000javascript:alert(1)"));
+    }
+}
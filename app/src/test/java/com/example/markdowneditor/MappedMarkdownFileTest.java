@@ -0,0 +1,92 @@
+package com.example.markdowneditor;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Позиции блоков файла, отображённого в память, сравниваются с разбором того же текста целиком
+ */
+public class MappedMarkdownFileTest {
+    private static final String CYRILLIC_CRLF_DOCUMENT = ""
+            + "Вступление перед первым заголовком\r\n"
+            + "\r\n"
+            + "# Установка\r\n"
+            + "Скачайте архив и распакуйте его.\r\n"
+            + "\r\n"
+            + "```\r\n"
+            + "./gradlew сборка\r\n"
+            + "```\r\n"
+            + "\r\n"
+            + "## Настройка\r\n"
+            + "| ключ | значение |\r\n"
+            + "|---|---|\r\n"
+            + "| язык | русский |\r\n"
+            + "\r\n"
+            + "# Использование\r\n"
+            + "Откройте файл.\r\n";
+
+    private static MappedMarkdownFile mapFile(String content) {
+        return new MappedMarkdownFile(ByteBuffer.wrap(content.getBytes(StandardCharsets.UTF_8)), null);
+    }
+
+    private static List<MarkdownBlock> parseAllWindows(MappedMarkdownFile file) {
+        List<MarkdownBlock> blocks = new ArrayList<>();
+        for (int windowIndex = 0; windowIndex < file.getWindowCount(); windowIndex++) {
+            blocks.addAll(file.parseWindow(windowIndex));
+        }
+        return blocks;
+    }
+
+    @Test
+    public void sourceLines_matchInMemoryParse() {
+        MappedMarkdownFile file = mapFile(CYRILLIC_CRLF_DOCUMENT);
+        List<MarkdownBlock> mappedBlocks = parseAllWindows(file);
+        List<MarkdownBlock> parsedBlocks = MarkdownBlockParser.parse(CYRILLIC_CRLF_DOCUMENT.replace("\r\n", "\n"));
+
+        assertEquals(parsedBlocks.size(), mappedBlocks.size());
+        assertEquals(parsedBlocks.size(), file.getBlockCount());
+        for (int blockIndex = 0; blockIndex < parsedBlocks.size(); blockIndex++) {
+            assertEquals(parsedBlocks.get(blockIndex).getSourceLineIndex(),
+                    mappedBlocks.get(blockIndex).getSourceLineIndex());
+        }
+    }
+
+    @Test
+    public void blockOffsets_areByteOffsetsLikeHeadingOffsets() {
+        MappedMarkdownFile file = mapFile(CYRILLIC_CRLF_DOCUMENT);
+        List<MarkdownBlock> mappedBlocks = parseAllWindows(file);
+        int[] headingBlockIndices = file.getHeadingBlockIndices();
+        byte[] bytes = CYRILLIC_CRLF_DOCUMENT.getBytes(StandardCharsets.UTF_8);
+
+        assertEquals(3, headingBlockIndices.length);
+        for (int headingIndex = 0; headingIndex < headingBlockIndices.length; headingIndex++) {
+            MarkdownBlock headingBlock = file.getHeadingBlocks().get(headingIndex);
+            MarkdownBlock parsedBlock = mappedBlocks.get(headingBlockIndices[headingIndex]);
+            assertEquals(headingBlock.getSourceOffset(), parsedBlock.getSourceOffset());
+            assertEquals(headingBlock.getSourceLineIndex(), parsedBlock.getSourceLineIndex());
+            assertEquals('#', bytes[parsedBlock.getSourceOffset()]);
+        }
+    }
+
+    @Test
+    public void outlineSection_isSameForMappedAndInMemoryDocument() {
+        MappedMarkdownFile file = mapFile(CYRILLIC_CRLF_DOCUMENT);
+        DocumentOutline mappedOutline = new DocumentOutline(file.getHeadingBlocks(),
+                file.getHeadingBlockIndices(), file.getBlockCount());
+        MarkdownDocument parsedDocument = MarkdownDocument.parse(CYRILLIC_CRLF_DOCUMENT.replace("\r\n", "\n"));
+        DocumentOutline parsedOutline = parsedDocument.getOutline();
+
+        for (int sectionIndex = 0; sectionIndex < parsedOutline.getSectionCount(); sectionIndex++) {
+            int startBlock = parsedOutline.getSectionStartBlock(sectionIndex);
+            int sourceLineIndex = parsedDocument.getBlocks().get(startBlock).getSourceLineIndex();
+            assertEquals(sectionIndex, mappedOutline.findSectionForSourceLine(sourceLineIndex));
+            assertEquals(sectionIndex, parsedOutline.findSectionForSourceLine(sourceLineIndex));
+        }
+    }
+}
@@ -0,0 +1,227 @@
+package com.example.markdowneditor;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Базовые значения метрик отрисовки из src/test/resources/render-baseline.properties.
+ * <p>
+ * Число View и глубина дерева не должны расти вовсе, а время и объём выделенной памяти
+ * сравниваются с допуском, потому что зависят от машины. Отсутствие базового значения считается
+ * регрессией, только если та же метрика уже закреплена для другого документа того же способа
+ * отрисовки (например, есть parser.*.viewCount, а parser.new.viewCount нет). Незакреплённые метрики
+ * не проверяются. Измеренные значения, метрики без базы и метрики, ставшие лучше базовых,
+ * записываются в отчёт build/reports/render-benchmark. Чтобы обновить базовый файл после осознанного изменения
+ * или добавления документа, запустите тесты с -PupdateRenderBaseline.
+ */
+final class RenderBaseline {
+    private static final String RESOURCE_NAME = "render-baseline.properties";
+    private static final File SOURCE_FILE = new File("src/test/resources/" + RESOURCE_NAME);
+    private static final File REPORT_FILE = new File("build/reports/render-benchmark/" + RESOURCE_NAME);
+
+    private static final double TIME_TOLERANCE = 0.5;
+    private static final long TIME_SLACK_NANOS = 5_000_000;
+    private static final double ALLOCATION_TOLERANCE = 0.15;
+    private static final long ALLOCATION_SLACK_BYTES = 64 * 1024;
+    private static final String IMPROVEMENT_PREFIX = "# Лучше базового значения, обновите базу: ";
+    private static final String MISSING_PREFIX = "# Нет базового значения: ";
+
+    private final Properties baselineValues;
+    private final Map<String, Long> measuredValues = new TreeMap<>();
+    private final List<String> regressions = new ArrayList<>();
+    private final List<String> improvements = new ArrayList<>();
+    private final List<String> missingBaselines = new ArrayList<>();
+
+    private RenderBaseline(Properties baselineValues) {
+        this.baselineValues = baselineValues;
+    }
+
+    static boolean isUpdateRequested() {
+        return Boolean.getBoolean("renderBaseline.update");
+    }
+
+    static RenderBaseline load() throws IOException {
+        Properties baselineValues = new Properties();
+        try (InputStream inputStream = RenderBaseline.class.getClassLoader().getResourceAsStream(RESOURCE_NAME)) {
+            if (inputStream != null) {
+                baselineValues.load(new InputStreamReader(inputStream, StandardCharsets.UTF_8));
+            }
+        }
+        return new RenderBaseline(baselineValues);
+    }
+
+    /**
+     * Метрики одного документа, снятые одним способом отрисовки
+     */
+    static final class Measurement {
+        int viewCount;
+        int viewDepth;
+        long allocatedBytes;
+        long parseNanos;
+        long renderNanos;
+
+        @Override
+        public String toString() {
+            return String.format("views=%d depth=%d alloc=%d КБ parse=%.2f мс render=%.2f мс",
+                    viewCount, viewDepth, allocatedBytes / 1024, parseNanos / 1e6, renderNanos / 1e6);
+        }
+    }
+
+    void check(String keyPrefix, Measurement measurement) {
+        checkCount(keyPrefix + ".viewCount", measurement.viewCount);
+        checkCount(keyPrefix + ".viewDepth", measurement.viewDepth);
+        checkWithTolerance(keyPrefix + ".allocatedBytes", measurement.allocatedBytes,
+                ALLOCATION_TOLERANCE, ALLOCATION_SLACK_BYTES);
+        checkWithTolerance(keyPrefix + ".parseNanos", measurement.parseNanos, TIME_TOLERANCE, TIME_SLACK_NANOS);
+        checkWithTolerance(keyPrefix + ".renderNanos", measurement.renderNanos, TIME_TOLERANCE, TIME_SLACK_NANOS);
+    }
+
+    private void checkCount(String key, long measuredValue) {
+        measuredValues.put(key, measuredValue);
+        Long baselineValue = getBaselineValue(key);
+        if (baselineValue == null) {
+            reportMissingBaseline(key);
+            return;
+        }
+        if (measuredValue > baselineValue) {
+            regressions.add(key + ": " + measuredValue + " > " + baselineValue);
+        } else if (measuredValue < baselineValue) {
+            improvements.add(key + ": " + measuredValue + " < " + baselineValue);
+        }
+    }
+
+    private void checkWithTolerance(String key, long measuredValue, double tolerance, long slack) {
+        measuredValues.put(key, measuredValue);
+        Long baselineValue = getBaselineValue(key);
+        if (baselineValue == null) {
+            reportMissingBaseline(key);
+            return;
+        }
+        long limit = Math.round(baselineValue * (1 + tolerance)) + slack;
+        if (measuredValue > limit) {
+            regressions.add(key + ": " + measuredValue + " > " + limit + " (базовое " + baselineValue + ")");
+        }
+    }
+
+    private void reportMissingBaseline(String key) {
+        if (isUpdateRequested()) {
+            return;
+        }
+        if (isMetricPinned(key)) {
+            regressions.add(key + ": нет базового значения, запустите тесты с -PupdateRenderBaseline");
+        } else {
+            missingBaselines.add(key + ": " + measuredValues.get(key));
+        }
+    }
+
+    /**
+     * Есть ли в базе эта метрика для другого документа того же способа отрисовки:
+     * для "parser.long.viewCount" — любой ключ "parser.*.viewCount"
+     */
+    private boolean isMetricPinned(String key) {
+        String modePrefix = key.substring(0, key.indexOf('.') + 1);
+        String metricSuffix = key.substring(key.lastIndexOf('.'));
+        for (String baselineKey : baselineValues.stringPropertyNames()) {
+            if (baselineKey.startsWith(modePrefix) && baselineKey.endsWith(metricSuffix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private Long getBaselineValue(String key) {
+        String value = baselineValues.getProperty(key);
+        return value != null ? Long.parseLong(value.trim()) : null;
+    }
+
+    List<String> getRegressions() {
+        return regressions;
+    }
+
+    /**
+     * Пишет измеренные значения, метрики без базы и улучшения в отчёт сборки, а при обновлении базы значения пишутся
+     * и в исходный файл
+     */
+    void writeMeasuredValues() throws IOException {
+        mergeInto(REPORT_FILE, true);
+        if (isUpdateRequested()) {
+            mergeInto(SOURCE_FILE, false);
+        }
+    }
+
+    /**
+     * Оба теста пишут в один файл, поэтому значения и улучшения другого теста сохраняются
+     */
+    private void mergeInto(File file, boolean writesComments) throws IOException {
+        Properties existingValues = new Properties();
+        if (file.isFile()) {
+            try (InputStream inputStream = new FileInputStream(file)) {
+                existingValues.load(new InputStreamReader(inputStream, StandardCharsets.UTF_8));
+            }
+        }
+        Map<String, String> mergedValues = new TreeMap<>();
+        for (String key : existingValues.stringPropertyNames()) {
+            mergedValues.put(key, existingValues.getProperty(key));
+        }
+        for (Map.Entry<String, Long> entry : measuredValues.entrySet()) {
+            mergedValues.put(entry.getKey(), String.valueOf(entry.getValue()));
+        }
+        TreeSet<String> mergedMissingBaselines = new TreeSet<>();
+        TreeSet<String> mergedImprovements = new TreeSet<>();
+        if (writesComments) {
+            if (file.isFile()) {
+                List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+                keepOtherTestComments(lines, MISSING_PREFIX, mergedMissingBaselines);
+                keepOtherTestComments(lines, IMPROVEMENT_PREFIX, mergedImprovements);
+            }
+            mergedMissingBaselines.addAll(missingBaselines);
+            mergedImprovements.addAll(improvements);
+        }
+
+        File parentDirectory = file.getAbsoluteFile().getParentFile();
+        if (!parentDirectory.isDirectory() && !parentDirectory.mkdirs()) {
+            throw new IOException("Не удалось создать каталог " + parentDirectory);
+        }
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)) {
+            writer.write("# Базовые метрики RenderBenchmarkTest; обновляются через -PupdateRenderBaseline\n");
+            for (Map.Entry<String, String> entry : mergedValues.entrySet()) {
+                writer.write(entry.getKey() + "=" + entry.getValue() + "\n");
+            }
+            for (String missingBaseline : mergedMissingBaselines) {
+                writer.write(MISSING_PREFIX + missingBaseline + "\n");
+            }
+            for (String improvement : mergedImprovements) {
+                writer.write(IMPROVEMENT_PREFIX + improvement + "\n");
+            }
+        }
+    }
+
+    /**
+     * Комментарии с префиксом, относящиеся к метрикам, которые этот тест не измерял
+     */
+    private void keepOtherTestComments(List<String> lines, String prefix, TreeSet<String> keptComments) {
+        for (String line : lines) {
+            if (line.startsWith(prefix)) {
+                String comment = line.substring(prefix.length());
+                int keyEnd = comment.indexOf(':');
+                if (keyEnd > 0 && !measuredValues.containsKey(comment.substring(0, keyEnd))) {
+                    keptComments.add(comment);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,243 @@
+package com.example.markdowneditor;
+
+import android.content.Context;
+import android.content.Intent;
+import android.os.Looper;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.LinearLayout;
+
+import androidx.lifecycle.ViewModelProvider;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.android.controller.ActivityController;
+import org.robolectric.annotation.Config;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * Отрисовывает фиксированный набор документов из src/test/resources/render-corpus и сравнивает
+ * число View, глубину дерева, выделенную память и время разбора и отрисовки с базовыми значениями
+ * (см. {@link RenderBaseline}). Время разбора и отрисовки берётся из {@link RenderMetrics},
+ * то есть из тех же замеров, что показывает оверлей метрик в приложении.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 34)
+public class RenderBenchmarkTest {
+    private static final String[] CORPUS_DOCUMENTS = {"readme", "tables", "code", "long"};
+    private static final int CONTAINER_WIDTH_PIXELS = 1080;
+    private static final int WARMUP_RUNS = 2;
+    private static final int MEASURED_RUNS = 5;
+    private static final Duration FRAME_DURATION = Duration.ofMillis(16);
+    private static final int STABLE_FRAMES_TO_FINISH = 10;
+    private static final long RENDER_TIMEOUT_MILLIS = 30_000;
+
+    @Test
+    public void markdownParser_staysWithinBaseline() throws IOException {
+        RenderBaseline baseline = RenderBaseline.load();
+        for (String documentName : CORPUS_DOCUMENTS) {
+            String content = readCorpusDocument(documentName);
+            RenderBaseline.Measurement measurement = measureRepeatedly(() -> renderWithParser(content));
+            baseline.check("parser." + documentName, measurement);
+        }
+        finish(baseline);
+    }
+
+    @Test
+    public void documentViewer_staysWithinBaseline() throws IOException {
+        RenderBaseline baseline = RenderBaseline.load();
+        for (String documentName : CORPUS_DOCUMENTS) {
+            String content = readCorpusDocument(documentName);
+            RenderBaseline.Measurement measurement = measureRepeatedly(() -> renderWithViewer(documentName, content));
+            baseline.check("viewer." + documentName, measurement);
+        }
+        finish(baseline);
+    }
+
+    private interface RenderRun {
+        RenderBaseline.Measurement run();
+    }
+
+    /**
+     * Прогревает JIT, затем берёт медиану времени и минимум выделенной памяти по нескольким запускам
+     */
+    private static RenderBaseline.Measurement measureRepeatedly(RenderRun renderRun) {
+        for (int runIndex = 0; runIndex < WARMUP_RUNS; runIndex++) {
+            renderRun.run();
+        }
+        RenderBaseline.Measurement[] runs = new RenderBaseline.Measurement[MEASURED_RUNS];
+        for (int runIndex = 0; runIndex < MEASURED_RUNS; runIndex++) {
+            runs[runIndex] = renderRun.run();
+        }
+
+        RenderBaseline.Measurement result = new RenderBaseline.Measurement();
+        result.viewCount = runs[MEASURED_RUNS - 1].viewCount;
+        result.viewDepth = runs[MEASURED_RUNS - 1].viewDepth;
+        long[] parseNanos = new long[MEASURED_RUNS];
+        long[] renderNanos = new long[MEASURED_RUNS];
+        result.allocatedBytes = Long.MAX_VALUE;
+        for (int runIndex = 0; runIndex < MEASURED_RUNS; runIndex++) {
+            parseNanos[runIndex] = runs[runIndex].parseNanos;
+            renderNanos[runIndex] = runs[runIndex].renderNanos;
+            result.allocatedBytes = Math.min(result.allocatedBytes, runs[runIndex].allocatedBytes);
+        }
+        result.parseNanos = median(parseNanos);
+        result.renderNanos = median(renderNanos);
+        return result;
+    }
+
+    /**
+     * Разбор и создание View через {@link MarkdownParser} с measure и layout в контейнере фиксированной ширины
+     */
+    private static RenderBaseline.Measurement renderWithParser(String content) {
+        Context context = RuntimeEnvironment.getApplication();
+        MarkdownParser parser = new MarkdownParser(context);
+        InstrumentedLinearLayout container = new InstrumentedLinearLayout(context);
+        container.setOrientation(LinearLayout.VERTICAL);
+        container.setRenderMetrics(parser.getRenderMetrics());
+        parser.resetRenderMetrics();
+
+        long allocationStart = currentThreadAllocatedBytes();
+        MarkdownDocument document = parser.parseDocument(content);
+        for (View blockView : parser.createBlockViews(document)) {
+            container.addView(blockView);
+        }
+        container.measure(
+                View.MeasureSpec.makeMeasureSpec(CONTAINER_WIDTH_PIXELS, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(0, View.MeasureSpec.UNSPECIFIED));
+        container.layout(0, 0, container.getMeasuredWidth(), container.getMeasuredHeight());
+        long allocatedBytes = currentThreadAllocatedBytes() - allocationStart;
+
+        RenderBaseline.Measurement measurement = collectMeasurement(parser.getRenderMetrics(), container);
+        measurement.allocatedBytes = allocatedBytes;
+        parser.cleanup();
+        return measurement;
+    }
+
+    /**
+     * Полный путь просмотра: {@link DocumentViewerActivity} с разбором в фоне и поэтапной вставкой
+     * секций. Кадры прокручиваются, пока число View в контейнере не перестанет меняться.
+     * Память считается только для главного потока, где создаются View.
+     */
+    private static RenderBaseline.Measurement renderWithViewer(String documentName, String content) {
+        Intent intent = new Intent(RuntimeEnvironment.getApplication(), DocumentViewerActivity.class)
+                .putExtra("content", content)
+                .putExtra("document_name", documentName + ".md");
+
+        long allocationStart = currentThreadAllocatedBytes();
+        ActivityController<DocumentViewerActivity> controller =
+                Robolectric.buildActivity(DocumentViewerActivity.class, intent).setup();
+        DocumentViewerActivity activity = controller.get();
+        LinearLayout container = activity.findViewById(R.id.container);
+        waitForStableViewTree(container);
+        long allocatedBytes = currentThreadAllocatedBytes() - allocationStart;
+
+        RenderMetrics renderMetrics = new ViewModelProvider(activity).get(DocumentViewModel.class)
+                .getParser().getRenderMetrics();
+        RenderBaseline.Measurement measurement = collectMeasurement(renderMetrics, container);
+        measurement.allocatedBytes = allocatedBytes;
+        controller.pause().stop().destroy();
+        return measurement;
+    }
+
+    private static void waitForStableViewTree(LinearLayout container) {
+        long deadline = System.currentTimeMillis() + RENDER_TIMEOUT_MILLIS;
+        int previousViewCount = -1;
+        int stableFrameCount = 0;
+        while (stableFrameCount < STABLE_FRAMES_TO_FINISH) {
+            assertTrue("Документ не отрисовался за " + RENDER_TIMEOUT_MILLIS + " мс",
+                    System.currentTimeMillis() < deadline);
+            shadowOf(Looper.getMainLooper()).idleFor(FRAME_DURATION);
+            int viewCount = container.getChildCount() > 0 ? MarkdownParser.countViews(container) : -1;
+            if (viewCount < 0) {
+                // Разбор ещё идёт в фоновом потоке
+                Thread.yield();
+                continue;
+            }
+            stableFrameCount = viewCount == previousViewCount ? stableFrameCount + 1 : 0;
+            previousViewCount = viewCount;
+        }
+    }
+
+    private static RenderBaseline.Measurement collectMeasurement(RenderMetrics renderMetrics, ViewGroup container) {
+        RenderBaseline.Measurement measurement = new RenderBaseline.Measurement();
+        measurement.viewCount = MarkdownParser.countViews(container);
+        measurement.viewDepth = measureDepth(container);
+        measurement.parseNanos = renderMetrics.getStageNanos(RenderMetrics.Stage.PARSE_BLOCKS)
+                + renderMetrics.getStageNanos(RenderMetrics.Stage.INLINE_FORMAT)
+                + renderMetrics.getStageNanos(RenderMetrics.Stage.INDEX);
+        measurement.renderNanos = renderMetrics.getStageNanos(RenderMetrics.Stage.CREATE_VIEWS)
+                + renderMetrics.getStageNanos(RenderMetrics.Stage.LAYOUT);
+        return measurement;
+    }
+
+    /**
+     * Глубина поддерева, включая сам корень
+     */
+    private static int measureDepth(View rootView) {
+        int childDepth = 0;
+        if (rootView instanceof ViewGroup) {
+            ViewGroup viewGroup = (ViewGroup) rootView;
+            for (int childIndex = 0; childIndex < viewGroup.getChildCount(); childIndex++) {
+                childDepth = Math.max(childDepth, measureDepth(viewGroup.getChildAt(childIndex)));
+            }
+        }
+        return 1 + childDepth;
+    }
+
+    private static long median(long[] values) {
+        long[] sortedValues = values.clone();
+        Arrays.sort(sortedValues);
+        return sortedValues[sortedValues.length / 2];
+    }
+
+    /**
+     * Байты, выделенные текущим потоком; 0, если JVM не поддерживает такой счётчик
+     */
+    private static long currentThreadAllocatedBytes() {
+        java.lang.management.ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        if (threadBean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threadBean)
+                    .getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return 0;
+    }
+
+    private static String readCorpusDocument(String documentName) throws IOException {
+        try (InputStream inputStream = RenderBenchmarkTest.class.getClassLoader()
+                .getResourceAsStream("render-corpus/" + documentName + ".md")) {
+            assertNotNull("Нет документа " + documentName + " в render-corpus", inputStream);
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int readCount;
+            while ((readCount = inputStream.read(buffer)) != -1) {
+                bytes.write(buffer, 0, readCount);
+            }
+            return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private static void finish(RenderBaseline baseline) throws IOException {
+        // Улучшения не роняют тест, а попадают в отчёт вместе с измеренными значениями
+        baseline.writeMeasuredValues();
+        List<String> regressions = baseline.getRegressions();
+        if (!RenderBaseline.isUpdateRequested()) {
+            assertTrue("Регрессия метрик отрисовки:\n" + String.join("\n", regressions), regressions.isEmpty());
+        }
+    }
+}
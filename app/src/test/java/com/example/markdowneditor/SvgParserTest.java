@@ -0,0 +1,101 @@
+package com.example.markdowneditor;
+
+import android.graphics.Matrix;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Разбор цветов, длин и трансформаций из атрибутов SVG. {@link Matrix} настоящая только
+ * под Robolectric, поэтому тест запускается через него.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 34)
+public class SvgParserTest {
+    private static final float DELTA = 1e-4f;
+
+    private static float[] mapPoint(Matrix transform, float x, float y) {
+        float[] point = {x, y};
+        transform.mapPoints(point);
+        return point;
+    }
+
+    @Test
+    public void parseColor_readsHexAndRgbForms() {
+        assertEquals(Integer.valueOf(0xffaabbcc), SvgParser.parseColor("#abc"));
+        assertEquals(Integer.valueOf(0xffff8800), SvgParser.parseColor(" #FF8800 "));
+        assertEquals(Integer.valueOf(0xffff0000), SvgParser.parseColor("rgb(255, 0, 0)"));
+        assertEquals(Integer.valueOf(0xffff8000), SvgParser.parseColor("rgb(100%, 50%, 0%)"));
+        assertEquals(Integer.valueOf(0xffff0000), SvgParser.parseColor("rgb(300, -20, 0)"));
+    }
+
+    @Test
+    public void parseColor_readsNamedColorsAndNone() {
+        assertEquals(Integer.valueOf(0xffff0000), SvgParser.parseColor("Red"));
+        assertEquals(Integer.valueOf(0x00000000), SvgParser.parseColor("transparent"));
+        assertEquals(Integer.valueOf(0xff000000), SvgParser.parseColor("currentColor"));
+        assertNull(SvgParser.parseColor("none"));
+        assertNull(SvgParser.parseColor(""));
+        assertNull(SvgParser.parseColor(null));
+    }
+
+    @Test
+    public void parseColor_fallsBackToBlackForMalformedValues() {
+        assertEquals(Integer.valueOf(0xff000000), SvgParser.parseColor("#12"));
+        assertEquals(Integer.valueOf(0xff000000), SvgParser.parseColor("rgb(1, 2)"));
+        assertEquals(Integer.valueOf(0xff000000), SvgParser.parseColor("chartreuse"));
+    }
+
+    @Test
+    public void parseLength_convertsUnits() {
+        assertEquals(10f, SvgParser.parseLength("10", 0), DELTA);
+        assertEquals(10f, SvgParser.parseLength("10px", 0), DELTA);
+        assertEquals(16f, SvgParser.parseLength("12pt", 0), DELTA);
+        assertEquals(32f, SvgParser.parseLength("2em", 0), DELTA);
+        assertEquals(2.5f, SvgParser.parseLength(" 2.5 ", 0), DELTA);
+    }
+
+    @Test
+    public void parseLength_usesDefaultForPercentAndUnknownValues() {
+        assertEquals(7f, SvgParser.parseLength("50%", 7), DELTA);
+        assertEquals(7f, SvgParser.parseLength("3cm", 7), DELTA);
+        assertEquals(7f, SvgParser.parseLength(null, 7), DELTA);
+    }
+
+    @Test
+    public void parseTransform_appliesOperationsLeftToRight() {
+        Matrix transform = SvgParser.parseTransform("translate(10) scale(2)");
+        assertArrayEquals(new float[]{12, 2}, mapPoint(transform, 1, 1), DELTA);
+
+        Matrix scale = SvgParser.parseTransform("scale(2, 3)");
+        assertArrayEquals(new float[]{2, 3}, mapPoint(scale, 1, 1), DELTA);
+    }
+
+    @Test
+    public void parseTransform_rotatesAroundCenter() {
+        assertArrayEquals(new float[]{0, 1}, mapPoint(SvgParser.parseTransform("rotate(90)"), 1, 0), DELTA);
+        assertArrayEquals(new float[]{20, 10},
+                mapPoint(SvgParser.parseTransform("rotate(90 10 10)"), 10, 0), DELTA);
+    }
+
+    @Test
+    public void parseTransform_readsMatrixInSvgOrder() {
+        Matrix transform = SvgParser.parseTransform("matrix(1,0,0,1,5,6)");
+        assertArrayEquals(new float[]{6, 7}, mapPoint(transform, 1, 1), DELTA);
+
+        Matrix skew = SvgParser.parseTransform("matrix(1 0 1 1 0 0)");
+        assertArrayEquals(new float[]{3, 2}, mapPoint(skew, 1, 2), DELTA);
+    }
+
+    @Test
+    public void parseTransform_returnsNullForEmptyValue() {
+        assertNull(SvgParser.parseTransform(null));
+        assertNull(SvgParser.parseTransform("  "));
+    }
+}
@@ -0,0 +1,72 @@
+package com.example.markdowneditor;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Чтение чисел и команд из данных пути SVG
+ */
+public class SvgPathDataTest {
+    private static final float DELTA = 1e-6f;
+
+    private static void assertRejected(String text) {
+        SvgPathData.NumberScanner scanner = new SvgPathData.NumberScanner(text);
+        try {
+            scanner.nextNumber();
+            fail("Число \"" + text + "\" не должно читаться");
+        } catch (IllegalArgumentException expected) {
+            // ожидаемая ошибка разбора
+        }
+    }
+
+    @Test
+    public void nextNumber_readsExponent() {
+        SvgPathData.NumberScanner scanner = new SvgPathData.NumberScanner("1e2 -2.5E-1 3e+1");
+        assertEquals(100f, scanner.nextNumber(), DELTA);
+        assertEquals(-0.25f, scanner.nextNumber(), DELTA);
+        assertEquals(30f, scanner.nextNumber(), DELTA);
+        assertFalse(scanner.hasNumber());
+    }
+
+    @Test
+    public void nextNumber_rejectsExponentWithoutDigits() {
+        assertRejected("1e");
+        assertRejected("1e-");
+    }
+
+    @Test
+    public void nextNumber_rejectsSignOrPointWithoutDigits() {
+        assertRejected("-");
+        assertRejected(".");
+    }
+
+    @Test
+    public void nextNumber_splitsSecondDecimalPointIntoNextNumber() {
+        SvgPathData.NumberScanner scanner = new SvgPathData.NumberScanner("1.5.5");
+        assertEquals(1.5f, scanner.nextNumber(), DELTA);
+        assertEquals(0.5f, scanner.nextNumber(), DELTA);
+        assertFalse(scanner.hasNumber());
+    }
+
+    @Test
+    public void nextNumber_splitsOnSignWithoutSeparator() {
+        SvgPathData.NumberScanner scanner = new SvgPathData.NumberScanner("10-5.5,+2");
+        assertEquals(10f, scanner.nextNumber(), DELTA);
+        assertEquals(-5.5f, scanner.nextNumber(), DELTA);
+        assertEquals(2f, scanner.nextNumber(), DELTA);
+    }
+
+    @Test
+    public void nextCommand_doesNotTreatExponentAsCommand() {
+        SvgPathData.NumberScanner scanner = new SvgPathData.NumberScanner("M1e1 L 2 3");
+        assertEquals('M', scanner.nextCommand());
+        assertEquals(0, scanner.nextCommand());
+        assertEquals(10f, scanner.nextNumber(), DELTA);
+        assertEquals('L', scanner.nextCommand());
+        assertTrue(scanner.hasNumber());
+    }
+}